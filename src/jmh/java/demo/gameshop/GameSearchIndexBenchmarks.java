@@ -0,0 +1,77 @@
+package demo.gameshop;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.repositories.GameRepository;
+import demo.gameshop.services.GameSearchIndex;
+
+/**
+ * Searching catalogs of different sizes, as done on every keystroke in the search box.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameSearchIndexBenchmarks {
+
+	private static final String[] WORDS = {
+		"legend", "mario", "dark", "souls", "super", "world", "racing", "star", "wars", "galaxy",
+		"kingdom", "hearts", "final", "fantasy", "street", "fighter", "call", "duty", "city", "knight"
+	};
+
+	@Param({ "10", "1000", "100000" })
+	private int size;
+
+	private GameSearchIndex searchIndex;
+
+	@Setup
+	public void createIndex() {
+		List<Game> games = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Game game = new Game(WORDS[i % WORDS.length] + " " + WORDS[i / WORDS.length % WORDS.length] + " " + i);
+			game.setGenre("Genre " + i % 10);
+			ReflectionTestUtils.setField(game, "id", Integer.toString(i));
+			games.add(game);
+		}
+		// Stand-in for MongoDB, the index only reads all the games once
+		GameRepository gameRepository = (GameRepository) Proxy.newProxyInstance(
+				GameRepository.class.getClassLoader(),
+				new Class<?>[] { GameRepository.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("streamAllForListing")) return games.stream();
+					throw new UnsupportedOperationException(method.getName());
+				});
+		searchIndex = new GameSearchIndex(gameRepository, Duration.ZERO);
+		searchIndex.search("load", 1);
+	}
+
+	@Benchmark
+	public List<GameDetails> searchExact() {
+		return searchIndex.search("dark souls", 10);
+	}
+
+	@Benchmark
+	public List<GameDetails> searchPrefix() {
+		return searchIndex.search("kingdom he", 10);
+	}
+
+	@Benchmark
+	public List<GameDetails> searchTypo() {
+		return searchIndex.search("galxy stra", 10);
+	}
+}
@@ -0,0 +1,59 @@
+package demo.gameshop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.helpers.ModelMapper;
+import demo.gameshop.models.GameDetails;
+
+/**
+ * Mapping lists of games to the models of the listings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelMapperBenchmarks {
+
+	@Param({ "100", "10000", "50000" })
+	private int size;
+
+	private List<Game> games;
+
+	@Setup
+	public void createGames() {
+		games = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Game game = new Game("Game " + i);
+			game.setGenre("Genre " + i % 10);
+			game.setImageUrl("/images/" + i);
+			games.add(game);
+		}
+	}
+
+	@Benchmark
+	public List<GameDetails> fromDocuments() {
+		return ModelMapper.fromDocuments(games, GameDetails::new);
+	}
+
+	@Benchmark
+	public List<GameDetails> generatedMapper() {
+		return DocumentMapper.INSTANCE.toGameDetails(games);
+	}
+
+	@Benchmark
+	public List<GameDetails> fromDocumentsInParallel() {
+		return DocumentMapper.INSTANCE.toGameDetails(games, DocumentMapper.DEFAULT_PARALLEL_THRESHOLD);
+	}
+}
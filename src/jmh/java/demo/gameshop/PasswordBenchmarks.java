@@ -0,0 +1,55 @@
+package demo.gameshop;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import demo.gameshop.helpers.PasswordGenerator;
+
+/**
+ * Generating and hashing passwords, as done when creating users and on every login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PasswordBenchmarks {
+
+	/** BCrypt strengths to compare, the default one and the ones chosen on faster machines */
+	@Param({"10", "12"})
+	private int strength;
+
+	private PasswordEncoder passwordEncoder;
+	private String password;
+	private String encodedPassword;
+
+	@Setup
+	public void createEncoder() {
+		// Same encoder as the application, without the limit of concurrent hashes
+		passwordEncoder = SecurityConfig.createPasswordEncoder(strength);
+		password = PasswordGenerator.generatePassword();
+		encodedPassword = passwordEncoder.encode(password);
+	}
+
+	@Benchmark
+	public String generatePassword() {
+		return PasswordGenerator.generatePassword();
+	}
+
+	@Benchmark
+	public String encode() {
+		return passwordEncoder.encode(password);
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return passwordEncoder.matches(password, encodedPassword);
+	}
+}
@@ -0,0 +1,104 @@
+package demo.gameshop;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import jakarta.servlet.Filter;
+
+/**
+ * Requests per second for a stylesheet through the security filters, with the chain of the
+ * public files before ({@code full}, with the same filters as the pages) and after
+ * ({@code fast}) skipping the security context, session, saved request and CSRF token.
+ * Only the security filters are measured, the file itself is not served.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StaticFilesSecurityBenchmarks {
+
+	@Param({ "full", "fast" })
+	private String chain;
+
+	private AnnotationConfigWebApplicationContext applicationContext;
+	private MockServletContext servletContext;
+	private MockHttpSession session;
+	private Filter springSecurityFilterChain;
+
+	@Setup
+	public void createFilterChain() {
+		servletContext = new MockServletContext();
+		applicationContext = new AnnotationConfigWebApplicationContext();
+		applicationContext.setServletContext(servletContext);
+		applicationContext.register(chain.equals("fast") ? FastChain.class : FullChain.class);
+		applicationContext.refresh();
+		springSecurityFilterChain = applicationContext.getBean("springSecurityFilterChain", Filter.class);
+		// A logged in user, as the files are requested by every page
+		session = new MockHttpSession(servletContext);
+		session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+				UsernamePasswordAuthenticationToken.authenticated("testuser", null, AuthorityUtils.createAuthorityList("ROLE_USER"))));
+	}
+
+	@TearDown
+	public void closeContext() {
+		applicationContext.close();
+	}
+
+	@Benchmark
+	public MockHttpServletResponse requestStylesheet() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/css/style.css");
+		request.setSession(session);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		springSecurityFilterChain.doFilter(request, response, new MockFilterChain());
+		return response;
+	}
+
+	@Configuration
+	@EnableWebMvc
+	@EnableWebSecurity
+	static class FullChain {
+		@Bean
+		SecurityFilterChain filesFilterChain(HttpSecurity http) throws Exception {
+			// The chain of the public files before the fast path
+			http
+				.securityMatcher(SecurityConfig.PUBLIC_FILES)
+				.authorizeHttpRequests(authorize -> authorize
+					.anyRequest().permitAll());
+			return http.build();
+		}
+	}
+
+	@Configuration
+	@EnableWebMvc
+	@EnableWebSecurity
+	static class FastChain {
+		@Bean
+		SecurityFilterChain filesFilterChain(HttpSecurity http) throws Exception {
+			return SecurityConfig.configurePublicFiles(http).build();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package demo.gameshop;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.services.GameService;
+
+/**
+ * Rendering the game listing, with the models the controller would read from MongoDB
+ * already in memory so only the rendering is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmarks {
+
+	@Param({ "24", "100" })
+	private int size;
+
+	private SpringTemplateEngine templateEngine;
+	private WebContext context;
+
+	@Setup
+	public void createContext() {
+		ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+		templateResolver.setPrefix("templates/");
+		templateResolver.setSuffix(".html");
+		templateResolver.setCharacterEncoding("UTF-8");
+		templateResolver.setCacheable(true);
+		templateEngine = new SpringTemplateEngine();
+		templateEngine.setTemplateResolver(templateResolver);
+
+		List<Game> games = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Game game = new Game("Game " + i);
+			game.setGenre("Genre " + i % 10);
+			game.setImageUrl("/images/" + i);
+			ReflectionTestUtils.setField(game, "id", Integer.toString(i));
+			games.add(game);
+		}
+		MockServletContext servletContext = new MockServletContext();
+		JakartaServletWebApplication application = JakartaServletWebApplication.buildApplication(servletContext);
+		MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/games");
+		context = new WebContext(application.buildExchange(request, new MockHttpServletResponse()), Locale.ENGLISH);
+		context.setVariables(Map.of(
+				"games", DocumentMapper.INSTANCE.toGameDetails(games),
+				"genres", List.of("Genre 0", "Genre 1", "Genre 2"),
+				"sort", GameService.Order.TITLE,
+				"size", size,
+				"nextCursor", "game-" + (size - 1)));
+	}
+
+	@Benchmark
+	public String renderGameList() {
+		StringWriter writer = new StringWriter();
+		templateEngine.process("games/list", context, writer);
+		return writer.toString();
+	}
+}
@@ -0,0 +1,55 @@
+package demo.gameshop;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import demo.gameshop.documents.Game;
+
+/**
+ * Normalizing a title, as done on every game create and edit and on every search.
+ * {@link #normalizeTitleWithPatterns()} is the regular expression based implementation
+ * it replaced, to compare them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TitleNormalizerBenchmarks {
+
+	@Param({
+		"The Legend of Zelda: Breath of the Wild",
+		"Tom Clancy's Rainbow Six® Siege",
+		"Pokémon™ Scarlet & Violet"
+	})
+	private String title;
+
+	private static final Pattern AND_PATTERN = Pattern.compile("&+");
+	private static final Pattern PLUS_PATTERN = Pattern.compile("\\++");
+	private static final Pattern REMOVE_PATTERN = Pattern.compile("[^\\w\\s-_']+");
+	private static final Pattern SPACE_PATTERN = Pattern.compile("[\\s-_']+");
+	private static final Pattern TRIM_PATTERN = Pattern.compile("(?:^-+|-+$)+");
+
+	@Benchmark
+	public String normalizeTitle() {
+		return Game.normalizeTitle(title);
+	}
+
+	@Benchmark
+	public String normalizeTitleWithPatterns() {
+		String result = StringUtils.stripAccents(title).toLowerCase();
+		result = AND_PATTERN.matcher(result).replaceAll(" and ");
+		result = PLUS_PATTERN.matcher(result).replaceAll(" plus ");
+		result = REMOVE_PATTERN.matcher(result).replaceAll("");
+		result = SPACE_PATTERN.matcher(result).replaceAll("-");
+		result = TRIM_PATTERN.matcher(result).replaceAll("");
+		return result;
+	}
+}
@@ -1,39 +1,123 @@
 package demo.gameshop;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.context.NullSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.savedrequest.NullRequestCache;
 
+import demo.gameshop.helpers.BoundedPasswordEncoder;
+import demo.gameshop.helpers.CookieSecurityContextRepository;
 import demo.gameshop.services.CustomUserDetailsService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 
+/**
+ * Spring Security configuration.
+ *
+ * <p>Passwords are hashed with BCrypt, with a strength (work factor) chosen at startup so
+ * hashing a password takes about the configured time on this machine. Hashes are stored
+ * with the id of their encoder (such as {@code {bcrypt}}), hashes stored without one are
+ * BCrypt hashes of the default strength. Hashes of another encoder or of a lower strength
+ * are replaced on the next successful login.</p>
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.password.hash-time} - Target time to hash a password, used to choose the strength</li>
+ *   <li>{@code gameshop.password.bcrypt-strength} - Strength to use instead of choosing it at startup,
+ *       so every instance of the application uses the same one</li>
+ *   <li>{@code gameshop.password.max-concurrent-hashes} - Maximum number of passwords hashed at the same time,
+ *       defaults to the number of cores</li>
+ *   <li>{@code gameshop.password.max-hash-wait} - Maximum time a login waits for the other hashes to finish
+ *       before being answered with {@code 503 Service Unavailable}</li>
+ *   <li>{@code gameshop.sessions.stateless} - Keeps the logged in user in an encrypted cookie instead of the
+ *       HTTP session (see {@link CookieSecurityContextRepository}), and the CSRF token in a cookie too;
+ *       logging out revokes the session of the cookie, including its copies, but not the other devices</li>
+ *   <li>{@code gameshop.sessions.keys} - Secrets of the keys encrypting the cookies, the first one encrypts;
+ *       must be the same on every instance</li>
+ *   <li>{@code gameshop.sessions.cookie-name} - Name of the cookie holding the logged in user</li>
+ *   <li>{@code gameshop.sessions.max-age} - Time a cookie is valid for, renewed on the requests made after half of it</li>
+ * </ul>
+ */
 @Configuration
 @EnableWebSecurity
 @RequiredArgsConstructor
 public class SecurityConfig {
 
+	/** Strength of {@link BCryptPasswordEncoder} by default, never chosen lower than this */
+	static final int MIN_BCRYPT_STRENGTH = 10;
+	static final int MAX_BCRYPT_STRENGTH = 16;
+	/** Files anyone can read, served without the logged in user */
+	static final String[] PUBLIC_FILES = { "/css/**", "/js/**", "/images/**" };
+
 	private final CustomUserDetailsService userDetailsService;
     
     @Bean
     @Order(1)
     SecurityFilterChain filesFilterChain(HttpSecurity http) throws Exception {
-    	http
-    		.securityMatcher("/css/**", "/js/**", "/images/**")
+    	return configurePublicFiles(http).build();
+    }
+    
+    /**
+     * Configures the chain of the public files, which never need the logged in user:
+     * the security context is neither loaded nor saved, and nothing is read from or
+     * written to the session (no saved request, no CSRF token as they are only read).
+     */
+    static HttpSecurity configurePublicFiles(HttpSecurity http) throws Exception {
+    	return http
+    		.securityMatcher(PUBLIC_FILES)
     		.authorizeHttpRequests(authorize -> authorize
-    			.anyRequest().permitAll());
-    	return http.build();
+    			.anyRequest().permitAll())
+    		.securityContext(context -> context
+    			.securityContextRepository(new NullSecurityContextRepository()))
+    		.sessionManagement(session -> session
+    			.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+    		.requestCache(cache -> cache.disable())
+    		.csrf(csrf -> csrf.disable());
     }
     
     @Bean
-    SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    SecurityFilterChain filterChain(
+    		HttpSecurity http,
+    		@Value("${gameshop.sessions.stateless:false}") boolean stateless,
+    		@Value("${gameshop.sessions.keys:}") List<String> keys,
+    		@Value("${gameshop.sessions.cookie-name:GAMESHOP_SESSION}") String cookieName,
+    		@Value("${gameshop.sessions.max-age:1h}") Duration maxAge) throws Exception {
+    	if (stateless) {
+    		// Without keys the cookies can only be read by this instance, until it is restarted
+    		if (keys.isEmpty()) keys = List.of(CookieSecurityContextRepository.generateSecret());
+    		CookieSecurityContextRepository repository = new CookieSecurityContextRepository(
+    				userDetailsService, userDetailsService, keys, cookieName, maxAge, Clock.systemUTC());
+    		// Nothing is stored in the session, which is then never created
+    		http
+    			.securityContext(context -> context.securityContextRepository(repository))
+    			.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+    			.logout(logout -> logout.addLogoutHandler(repository.logoutHandler()))
+    			.addFilterAfter(repository.renewalFilter(), SecurityContextHolderFilter.class)
+    			.requestCache(cache -> cache.requestCache(new NullRequestCache()))
+    			.csrf(csrf -> csrf.csrfTokenRepository(new CookieCsrfTokenRepository()));
+    	}
 		http
 			.authorizeHttpRequests((authorize) -> authorize
 				.requestMatchers("/profile/**").hasAnyRole("USER", "ADMIN")
@@ -43,6 +127,7 @@ public class SecurityConfig {
 			.formLogin(form -> form
 				.loginPage("/login")
 				.defaultSuccessUrl("/", true)
+				.failureHandler(loginFailureHandler())
 				.permitAll(true)
 			)
 			.logout(logout -> logout
@@ -55,15 +140,77 @@ public class SecurityConfig {
 	}
     
     @Bean
-    AuthenticationManager authenticationManager() throws Exception {
+    AuthenticationManager authenticationManager(PasswordEncoder passwordEncoder) throws Exception {
 		DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider(userDetailsService);
-    	authProvider.setPasswordEncoder(passwordEncoder());
+    	authProvider.setPasswordEncoder(passwordEncoder);
+    	// Stores the new hash of the password when its hash needs to be upgraded
+    	authProvider.setUserDetailsPasswordService(userDetailsService);
 		return new ProviderManager(authProvider);
 	}
     
     // Authentication Setup
     @Bean
-    PasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(
+    		@Value("${gameshop.password.hash-time:250ms}") Duration hashTime,
+    		@Value("${gameshop.password.bcrypt-strength:0}") int bcryptStrength,
+    		@Value("${gameshop.password.max-concurrent-hashes:0}") int maxConcurrentHashes,
+    		@Value("${gameshop.password.max-hash-wait:2s}") Duration maxHashWait) {
+    	int strength = bcryptStrength > 0 ? bcryptStrength : calibrateBCryptStrength(hashTime);
+    	int permits = maxConcurrentHashes > 0 ? maxConcurrentHashes : Runtime.getRuntime().availableProcessors();
+		return new BoundedPasswordEncoder(createPasswordEncoder(strength), permits, maxHashWait);
 	}
+    
+    /**
+     * Creates the encoder of the passwords, without limiting the number of concurrent hashes.
+     * @param bcryptStrength The strength of the new BCrypt hashes
+     */
+    static PasswordEncoder createPasswordEncoder(int bcryptStrength) {
+    	DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt",
+    			Map.of("bcrypt", new BCryptPasswordEncoder(bcryptStrength)));
+    	// Hashes stored before the ids were added
+    	encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+    	return encoder;
+    }
+    
+    /**
+     * Chooses the highest BCrypt strength for which hashing a password takes at most {@code hashTime},
+     * as each extra round of strength doubles the time.
+     */
+    static int calibrateBCryptStrength(Duration hashTime) {
+    	int strength = MIN_BCRYPT_STRENGTH;
+    	long time = timeBCrypt(strength);
+    	while (strength < MAX_BCRYPT_STRENGTH && time * 2 <= hashTime.toNanos()) {
+    		strength++;
+    		time *= 2;
+    	}
+    	return strength;
+    }
+    
+    private static long timeBCrypt(int strength) {
+    	BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+    	long best = Long.MAX_VALUE;
+    	// The first hashes are slower, until the hashing code is compiled
+    	for (int i = 0; i < 3; i++) {
+    		long start = System.nanoTime();
+    		encoder.encode("calibration");
+    		best = Math.min(best, System.nanoTime() - start);
+    	}
+    	return best;
+    }
+    
+    /**
+     * Redirects back to the login page on failure, except when the password could not be
+     * checked because too many are being hashed, answered with {@code 503 Service Unavailable}.
+     */
+    private static AuthenticationFailureHandler loginFailureHandler() {
+    	AuthenticationFailureHandler failureHandler = new SimpleUrlAuthenticationFailureHandler("/login?error");
+    	return (request, response, exception) -> {
+    		if (exception instanceof BoundedPasswordEncoder.BusyException) {
+    			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+    			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    			return;
+    		}
+    		failureHandler.onAuthenticationFailure(request, response, exception);
+    	};
+    }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package demo.gameshop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thymeleaf.ThymeleafProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Spring MVC configuration.
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.views.streamed} - Names of the views written to the response while they are
+ *       rendered, in chunks of the response buffer size, instead of once fully rendered</li>
+ *   <li>{@code gameshop.views.streamed-buffer-size} - Size of the response buffer of the streamed views,
+ *       the bigger it is the later the first chunk is sent</li>
+ * </ul>
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+	/**
+	 * Resolves the streamed views before the default Thymeleaf view resolver, which renders
+	 * the other views fully before writing them (see
+	 * {@code spring.thymeleaf.servlet.produce-partial-output-while-processing}), so an error
+	 * while rendering them still shows the error page.
+	 *
+	 * <p>Streamed views must not create the session once rendering started (for example by
+	 * reading the CSRF token after the first chunk), as it cannot be done after the response is committed.</p>
+	 */
+	@Bean
+	ThymeleafViewResolver streamingViewResolver(
+			SpringTemplateEngine templateEngine,
+			ThymeleafProperties properties,
+			@Value("${gameshop.views.streamed:}") String[] viewNames,
+			@Value("${gameshop.views.streamed-buffer-size:8KB}") DataSize bufferSize) {
+		ThymeleafViewResolver resolver = new ThymeleafViewResolver() {
+			@Override
+			protected View loadView(String viewName, Locale locale) throws Exception {
+				return new BufferSizeView(super.loadView(viewName, locale), (int) bufferSize.toBytes());
+			}
+		};
+		resolver.setTemplateEngine(templateEngine);
+		resolver.setCharacterEncoding(properties.getEncoding().name());
+		resolver.setContentType(properties.getServlet().getContentType() + ";charset=" + properties.getEncoding().name());
+		resolver.setCache(properties.isCache());
+		resolver.setProducePartialOutputWhileProcessing(true);
+		resolver.setViewNames(viewNames);
+		// Before the default Thymeleaf view resolver
+		resolver.setOrder(Ordered.LOWEST_PRECEDENCE - 10);
+		return resolver;
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new ModelResourcesInterceptor());
+	}
+
+	/**
+	 * Sets the size of the response buffer before rendering a view,
+	 * the servlet container sends a chunk every time the buffer is full.
+	 */
+	private record BufferSizeView(View view, int bufferSize) implements View {
+
+		@Override
+		public String getContentType() {
+			return view.getContentType();
+		}
+
+		@Override
+		public void render(Map<String, ?> model, HttpServletRequest request, HttpServletResponse response)
+				throws Exception {
+			if (!response.isCommitted()) response.setBufferSize(bufferSize);
+			view.render(model, request, response);
+		}
+	}
+
+	/**
+	 * Closes the {@link AutoCloseable} model attributes (such as streams over a MongoDB cursor)
+	 * once the view is rendered, or failed to render.
+	 */
+	private static final class ModelResourcesInterceptor implements HandlerInterceptor {
+
+		private static final String RESOURCES_ATTRIBUTE = ModelResourcesInterceptor.class.getName() + ".resources";
+
+		@Override
+		public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+				ModelAndView modelAndView) {
+			if (modelAndView == null) return;
+			List<AutoCloseable> resources = new ArrayList<>();
+			for (Object value : modelAndView.getModel().values()) {
+				if (value instanceof AutoCloseable resource) resources.add(resource);
+			}
+			if (!resources.isEmpty()) request.setAttribute(RESOURCES_ATTRIBUTE, resources);
+		}
+
+		@Override
+		public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+				Exception ex) {
+			if (!(request.getAttribute(RESOURCES_ATTRIBUTE) instanceof List<?> resources)) return;
+			request.removeAttribute(RESOURCES_ATTRIBUTE);
+			for (Object resource : resources) {
+				try {
+					((AutoCloseable) resource).close();
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
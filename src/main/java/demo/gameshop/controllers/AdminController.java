@@ -1,45 +1,80 @@
 package demo.gameshop.controllers;
 
 import demo.gameshop.documents.Game;
-import demo.gameshop.documents.GameReview;
 import demo.gameshop.documents.User;
-import demo.gameshop.helpers.ModelMapper;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.helpers.PasswordGenerator;
+import demo.gameshop.helpers.StreamIterator;
+import demo.gameshop.models.CursorPage;
 import demo.gameshop.models.GameDetails;
 import demo.gameshop.models.GameForm;
 import demo.gameshop.models.UserDetails;
 import demo.gameshop.models.UserForm;
 import demo.gameshop.repositories.GameRepository;
-import demo.gameshop.repositories.GameReviewRepository;
 import demo.gameshop.repositories.UserRepository;
-import demo.gameshop.services.FileService;
+import demo.gameshop.services.CatalogCache;
+import demo.gameshop.services.CustomUserDetailsService;
+import demo.gameshop.services.FileService.FileTooLargeException;
+import demo.gameshop.services.GameSearchIndex;
+import demo.gameshop.services.GameService;
+import demo.gameshop.services.ImageService;
+import demo.gameshop.services.ImageService.InvalidImageException;
+import demo.gameshop.services.UserImportService;
+import demo.gameshop.services.UserImportService.Format;
+import demo.gameshop.services.UserImportService.ImportResult;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 
+@Slf4j
 @Controller
 @RequestMapping("/admin")
 @RequiredArgsConstructor
 public class AdminController {
 	
 	private final GameRepository gameRepository;
-	private final GameReviewRepository gameReviewRepository;
 	private final UserRepository userRepository;
-	private final FileService fileService;
+	private final ImageService imageService;
+	private final CatalogCache catalogCache;
+	private final GameService gameService;
+	private final GameSearchIndex gameSearchIndex;
 	private final PasswordEncoder passwordEncoder;
+	private final CustomUserDetailsService userDetailsService;
+	private final UserImportService userImportService;
+	private final ObjectMapper objectMapper;
+	
+	/** Same limit as the one validated on {@link GameForm#getImageFile()} */
+	private static final DataSize MAX_IMAGE_SIZE = DataSize.ofMegabytes(32);
 	
 	// TODO : Make admin panel (games CRUD, user management)
 	@GetMapping
@@ -53,10 +88,11 @@ public class AdminController {
 	@GetMapping("/users")
 	public Callable<String> listUsers(Model model) {
 		return () -> {
-			List<User> users = userRepository.findAll();
+			// Read from the cursor while the view is rendered instead of loading every user first
 			model.addAttribute(
 					"users",
-					ModelMapper.fromDocuments(users, UserDetails::new));
+					new StreamIterator<>(DocumentMapper.INSTANCE.toUserDetails(
+							userRepository.streamAllForListing())));
 			return "admin/listUsers";
 		};
 	}
@@ -121,7 +157,7 @@ public class AdminController {
 			if (userDetails.getUsername().equals(user.getUsername())) return "admin/userNotFound";
 			model.addAttribute(
 					"userForm",
-					ModelMapper.fromDocument(user, UserForm::new));
+					DocumentMapper.INSTANCE.toUserForm(user));
 			return "admin/editUser";
 		};
 	}
@@ -159,6 +195,7 @@ public class AdminController {
 			user.setAddress(userForm.getAddress());
 			user.setRoles(userForm.getRoles());
 			userRepository.save(user);
+			userDetailsService.evict(user);
 			
 			return "redirect:/admin/users";
 		};
@@ -184,6 +221,7 @@ public class AdminController {
 		user.setDisabled(true);
 		try {
 			userRepository.save(user);
+			userDetailsService.evict(user);
 		}
 		catch (Exception e) {
 			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -210,6 +248,7 @@ public class AdminController {
 		user.setDisabled(false);
 		try {
 			userRepository.save(user);
+			userDetailsService.evict(user);
 		}
 		catch (Exception e) {
 			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -235,22 +274,115 @@ public class AdminController {
 		}
 		try {
 			userRepository.delete(user);
+			userDetailsService.evict(user);
 		}
 		catch (Exception e) {
 			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 		}
 	}
 	
+	/**
+	 * Creates the users of a CSV or NDJSON file sent as the request body (see {@link UserImportService}).
+	 *
+	 * <p>The response is written while the file is read: an NDJSON line for each row that could not
+	 * be imported, then a last line with the number of rows read, imported and failed.
+	 * The CSRF token must be sent as a header.</p>
+	 */
+	@PostMapping(value = "/users/import", consumes = { "text/csv", MediaType.APPLICATION_NDJSON_VALUE })
+	public void importUsers(
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Format format = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()))
+				? Format.NDJSON
+				: Format.CSV;
+		Charset charset;
+		try {
+			charset = request.getCharacterEncoding() != null
+					? Charset.forName(request.getCharacterEncoding())
+					: StandardCharsets.UTF_8;
+		}
+		catch (IllegalArgumentException e) {
+			// Unknown or invalid charset name, nothing was read yet
+			response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+			return;
+		}
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		Writer writer = response.getWriter();
+		try {
+			ImportResult result = userImportService.importUsers(
+					new InputStreamReader(request.getInputStream(), charset),
+					format,
+					error -> writeJsonLine(writer, error));
+			writeJsonLine(writer, result);
+		}
+		catch (IOException e) {
+			// Invalid file or the upload was interrupted, the rows before were imported
+			if (!response.isCommitted()) response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			writeJsonLine(writer, Map.of("error", String.valueOf(e.getMessage())));
+		}
+	}
+	
+	/**
+	 * Writes all the users as a CSV or NDJSON file, read from the database while it is written.
+	 */
+	@GetMapping("/users/export")
+	public void exportUsers(
+			@RequestParam(required=false, defaultValue="csv") String format,
+			HttpServletResponse response) throws IOException {
+		Format exportFormat;
+		try {
+			exportFormat = Format.valueOf(format.toUpperCase(Locale.ROOT));
+		}
+		catch (IllegalArgumentException e) {
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		response.setContentType(exportFormat.getContentType());
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setHeader("Content-Disposition", "attachment; filename=users." + exportFormat.name().toLowerCase(Locale.ROOT));
+		userImportService.exportUsers(response.getWriter(), exportFormat);
+	}
+	
+	private void writeJsonLine(Writer writer, Object value) {
+		try {
+			writer.write(objectMapper.writeValueAsString(value));
+			writer.write('\n');
+			// Sent right away, so the progress of long imports can be followed
+			writer.flush();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
 	//===============================================
 	// Games CRUD
 	//===============================================
 	@GetMapping("/games")
-	public Callable<String> listGames(Model model) {
+	public Callable<String> listGames(
+			@RequestParam(name = "genre", required = false) String genre,
+			@RequestParam(name = "sort", required = false, defaultValue = "TITLE") GameService.Order order,
+			@RequestParam(name = "cursor", required = false) String cursor,
+			@RequestParam(name = "size", required = false, defaultValue = "50") int size,
+			Model model) {
 		return () -> {
-			List<Game> games = gameRepository.findAll();
-			model.addAttribute(
-					"games",
-					ModelMapper.fromDocuments(games, GameDetails::new));
+			String genreFilter = genre == null || genre.isBlank() ? null : genre;
+			int pageSize = Math.max(1, Math.min(size, GameController.MAX_PAGE_SIZE));
+			CursorPage<GameDetails> games;
+			try {
+				games = gameService.getGames(genreFilter, order, cursor, pageSize);
+			}
+			catch (IllegalArgumentException e) {
+				// Invalid cursor, show the first page
+				games = gameService.getGames(genreFilter, order, null, pageSize);
+			}
+			model.addAttribute("games", games.content());
+			model.addAttribute("genres", gameService.getGenres());
+			model.addAttribute("genre", genreFilter);
+			model.addAttribute("sort", order);
+			model.addAttribute("size", pageSize);
+			model.addAttribute("nextCursor", games.nextCursor());
 			return "admin/listGames";
 		};
 	}
@@ -283,7 +415,8 @@ public class AdminController {
 			game.setGenre(gameForm.getGenre());
 			saveAndSetImage(gameForm, game);
 			game = gameRepository.save(game);
-			gameReviewRepository.save(new GameReview(game.getId()));
+			catalogCache.invalidate();
+			gameSearchIndex.put(game);
 			//=====================================================
 			// In case of error
 			//model.addAttribute("gameForm", gameForm);
@@ -304,7 +437,7 @@ public class AdminController {
 			
 			model.addAttribute(
 					"gameForm",
-					ModelMapper.fromDocument(game, GameForm::new));
+					DocumentMapper.INSTANCE.toGameForm(game));
 			return "admin/editGame";
 		};
 	}
@@ -335,6 +468,8 @@ public class AdminController {
 			game.setGenre(gameForm.getGenre());
 			saveAndSetImage(gameForm, game);
 			gameRepository.save(game);
+			catalogCache.invalidate();
+			gameSearchIndex.put(game);
 			
 			return "redirect:/admin/games";
 		};
@@ -368,46 +503,112 @@ public class AdminController {
 		try {
 			String imageUrl = game.getImageUrl();
 			if (imageUrl != null && !imageUrl.isEmpty()) {
-				fileService.deleteFile(imageUrl.substring(8));
+				imageService.deleteImage(imageUrl.substring(8));
 			}
 			gameRepository.delete(game);
+			catalogCache.invalidate();
+			gameSearchIndex.remove(game.getId());
 		}
 		catch (Exception e) {
 			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 		}
 	}
 	
+	/**
+	 * Streams a new cover image for a game straight into GridFS.
+	 *
+	 * <p>Unlike the edit form, the multipart request body is parsed while it is read,
+	 * so the image is never spooled to disk or memory by the servlet container.
+	 * The CSRF token must be sent as a header, as reading it from the request parameters
+	 * would make the container parse (and spool) the whole body first.</p>
+	 *
+	 * <p>Answered with {@code 413 Payload Too Large} if the image is bigger than {@link #MAX_IMAGE_SIZE},
+	 * and {@code 415 Unsupported Media Type} if the body is not multipart or the file is not an image.</p>
+	 */
+	@PostMapping("/games/{id}/image")
+	public void uploadGameImage(
+			@PathVariable String id,
+			HttpServletRequest request,
+			HttpServletResponse response) {
+		// Check if game exists
+		Optional<Game> gameOptional = gameRepository.findById(id);
+		if (gameOptional.isEmpty()) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		Game game = gameOptional.get();
+		if (!JakartaServletFileUpload.isMultipartContent(request)) {
+			response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+			return;
+		}
+		try {
+			FileItemInputIterator items = new JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory>()
+					.getItemIterator(request);
+			while (items.hasNext()) {
+				FileItemInput item = items.next();
+				if (item.isFormField() || !"imageFile".equals(item.getFieldName())) continue;
+				String contentType = item.getContentType();
+				if (contentType == null || !contentType.startsWith("image/")) {
+					response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+					return;
+				}
+				String imageId;
+				try (InputStream inputStream = item.getInputStream()) {
+					imageId = imageService.addImage(
+							inputStream,
+							buildImageFileName(game, item.getName(), contentType),
+							contentType,
+							MAX_IMAGE_SIZE.toBytes());
+				}
+				// Successfully added new image, delete old image if it exists
+				String ogImageUrl = game.getImageUrl();
+				if (ogImageUrl != null && !ogImageUrl.isEmpty()) {
+					imageService.deleteImage(ogImageUrl.substring(8));
+				}
+				game.setImageUrl("/images/"+imageId);
+				gameRepository.save(game);
+				catalogCache.invalidate();
+				gameSearchIndex.put(game);
+				return;
+			}
+			// No image was sent
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+		catch (FileTooLargeException e) {
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+		}
+		catch (InvalidImageException e) {
+			response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+		}
+		catch (FileUploadException e) {
+			log.debug("Invalid multipart body for the image of game {}", id, e);
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+		catch (IOException e) {
+			// Most likely the client going away while sending the image
+			log.warn("Could not read the image of game {}", id, e);
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+		catch (RuntimeException e) {
+			log.error("Could not store the image of game {}", id, e);
+			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+	
 	private boolean saveAndSetImage(GameForm gameForm, Game game) {
 		if (gameForm.getImageFile().isEmpty()) {
 			return false;
 		}
-		// Build new image file name
 		MultipartFile file = gameForm.getImageFile();
-		String ogFileName = file.getOriginalFilename();
-		StringBuilder fileName = new StringBuilder(game.getTitleNormalized());
-        int extensionIdx = ogFileName.lastIndexOf(".");
-		if (extensionIdx == -1) { // Has no file name extension
-        	switch (file.getContentType()) {
-        	case MediaType.IMAGE_PNG_VALUE:
-        		fileName.append(".png");
-        		break;
-        	case MediaType.IMAGE_GIF_VALUE:
-        		fileName.append(".gif");
-        		break;
-        	default: // Default to .jpeg extension
-        		fileName.append(".jpeg");
-        		break;
-        	}
-        } else fileName.append(ogFileName.substring(extensionIdx));
 		// Save image
 		try {
-			String id = fileService.addFile(
+			String id = imageService.addImage(
 					file,
-					fileName.toString());
+					buildImageFileName(game, file.getOriginalFilename(), file.getContentType()));
 			// Successfully added new image, delete old image if it exists
 			String ogImageUrl = game.getImageUrl();
 			if (ogImageUrl != null && !ogImageUrl.isEmpty()) {
-				fileService.deleteFile(ogImageUrl.substring(8));
+				imageService.deleteImage(ogImageUrl.substring(8));
 			}
 			game.setImageUrl("/images/"+id);
 		}
@@ -417,4 +618,23 @@ public class AdminController {
 		}
 		return true;
 	}
+	
+	private static String buildImageFileName(Game game, String ogFileName, String contentType) {
+		StringBuilder fileName = new StringBuilder(game.getTitleNormalized());
+		int extensionIdx = ogFileName == null ? -1 : ogFileName.lastIndexOf(".");
+		if (extensionIdx == -1) { // Has no file name extension
+			switch (contentType) {
+			case MediaType.IMAGE_PNG_VALUE:
+				fileName.append(".png");
+				break;
+			case MediaType.IMAGE_GIF_VALUE:
+				fileName.append(".gif");
+				break;
+			default: // Default to .jpeg extension
+				fileName.append(".jpeg");
+				break;
+			}
+		} else fileName.append(ogFileName.substring(extensionIdx));
+		return fileName.toString();
+	}
 }
@@ -1,25 +1,55 @@
 package demo.gameshop.controllers;
 
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import java.util.function.Supplier;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ModelAttribute;
+import org.thymeleaf.context.LazyContextVariable;
 
-import jakarta.servlet.http.HttpServletRequest;
-
+/**
+ * Adds the logged in user to the model of every view.
+ *
+ * <p>The values are only computed if the view reads them, so requests that do not render
+ * a view (or render one that does not show the user) never load the security context,
+ * which may read the session or decrypt the session cookie.</p>
+ */
 @ControllerAdvice
 public class CurrentUserAdvice {
 	
     @ModelAttribute("currentUser")
-    public String currentUserEmail(@AuthenticationPrincipal UserDetails userDetails) {
-        if (userDetails == null) {
-            return null;
-        }
-        return userDetails.getUsername();
+    public LazyContextVariable<String> currentUserEmail() {
+    	// Only loaded the first time a view reads the value
+    	Supplier<SecurityContext> context = SecurityContextHolder.getContextHolderStrategy().getDeferredContext();
+        return new LazyContextVariable<>() {
+        	@Override
+        	protected String loadValue() {
+        		Authentication authentication = context.get().getAuthentication();
+        		if (authentication == null || !(authentication.getPrincipal() instanceof UserDetails userDetails)) {
+        			return null;
+        		}
+        		return userDetails.getUsername();
+        	}
+        };
     }
     
     @ModelAttribute("isAdmin")
-    public boolean userIsAdmin(HttpServletRequest request) {
-    	return request.isUserInRole("ROLE_ADMIN");
+    public LazyContextVariable<Boolean> userIsAdmin() {
+    	Supplier<SecurityContext> context = SecurityContextHolder.getContextHolderStrategy().getDeferredContext();
+    	return new LazyContextVariable<>() {
+    		@Override
+    		protected Boolean loadValue() {
+    			Authentication authentication = context.get().getAuthentication();
+    			if (authentication == null) return false;
+    			for (GrantedAuthority authority : authentication.getAuthorities()) {
+    				if ("ROLE_ADMIN".equals(authority.getAuthority())) return true;
+    			}
+    			return false;
+    		}
+    	};
     }
 }
@@ -1,20 +1,33 @@
 package demo.gameshop.controllers;
 
-import demo.gameshop.documents.Game;
 import demo.gameshop.documents.GameReview;
+import demo.gameshop.documents.Review;
+import demo.gameshop.documents.User;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.helpers.ModelMapper;
+import demo.gameshop.models.CursorPage;
 import demo.gameshop.models.GameDetails;
+import demo.gameshop.models.RatingDetails;
 import demo.gameshop.models.ReviewDetails;
+import demo.gameshop.models.ReviewForm;
 import demo.gameshop.repositories.GameRepository;
-import demo.gameshop.repositories.GameReviewRepository;
+import demo.gameshop.repositories.UserRepository;
+import demo.gameshop.services.CatalogCache;
+import demo.gameshop.services.GameSearchIndex;
+import demo.gameshop.services.GameService;
+import demo.gameshop.services.ReviewService;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 
@@ -23,61 +36,173 @@ import java.util.concurrent.Callable;
 @RequiredArgsConstructor
 public class GameController {
 
+	/** Response header holding the cursor of the next page of reviews */
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	/** Maximum number of games in a page of the catalog */
+	public static final int MAX_PAGE_SIZE = 100;
+
 	private final GameRepository gameRepository;
-	private final GameReviewRepository gameReviewRepository;
+	private final UserRepository userRepository;
+	private final ReviewService reviewService;
+	private final CatalogCache catalogCache;
+	private final GameService gameService;
+	private final GameSearchIndex gameSearchIndex;
 
+	/**
+	 * Lists a page of the games, optionally of a single genre.
+	 *
+	 * <p>The next page is requested with the cursor added to the model as {@code nextCursor},
+	 * which is {@code null} on the last page. An invalid cursor shows the first page.</p>
+	 */
 	@GetMapping
-	public Callable<String> listGames(Model model) {
+	public Callable<String> listGames(
+			@RequestParam(name = "genre", required = false) String genre,
+			@RequestParam(name = "sort", required = false, defaultValue = "TITLE") GameService.Order order,
+			@RequestParam(name = "cursor", required = false) String cursor,
+			@RequestParam(name = "size", required = false, defaultValue = "24") int size,
+			Model model) {
 		return () -> {
-			List<Game> games = gameRepository.findAll();
+			String genreFilter = genre == null || genre.isBlank() ? null : genre;
+			int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+			CursorPage<GameDetails> games;
+			try {
+				games = gameService.getGames(genreFilter, order, cursor, pageSize);
+			}
+			catch (IllegalArgumentException e) {
+				// Invalid cursor, show the first page
+				games = gameService.getGames(genreFilter, order, null, pageSize);
+			}
 			// Ensure the view receives the list under the name 'games'
-			model.addAttribute(
-                    "games",
-                    ModelMapper.fromDocuments(games, GameDetails::new));
+			model.addAttribute("games", games.content());
+			model.addAttribute("genres", gameService.getGenres());
+			model.addAttribute("genre", genreFilter);
+			model.addAttribute("sort", order);
+			model.addAttribute("size", pageSize);
+			model.addAttribute("nextCursor", games.nextCursor());
 			return "games/list";
 		};
 	}
 
+	/**
+	 * Searches the games by title and genre, tolerating typos and unfinished words.
+	 */
+	@ResponseBody
+	@GetMapping("/search")
+	public List<GameDetails> searchGames(
+			@RequestParam(name = "q", required = false, defaultValue = "") String query,
+			@RequestParam(name = "limit", required = false, defaultValue = "10") int limit) {
+		return gameSearchIndex.search(query, Math.min(limit, MAX_PAGE_SIZE));
+	}
+
 	@GetMapping("/{title}")
 	public Callable<String> displayGame(
 			@PathVariable("title") String titleNormalized,
 			Model model) {
 		return () -> {
-            Optional<Game> gameOptional  = gameRepository.findByTitleNormalized(titleNormalized);
+            Optional<GameDetails> gameOptional = catalogCache.findByTitleNormalized(titleNormalized);
             if (gameOptional.isEmpty()) return "games/gameNotFound";
-			Game game = gameOptional.get();
-            // Get or create game review document
-            String gameId = game.getId();
-            Optional<GameReview> gameReviewOptional = gameReviewRepository.findById(gameId);
-            GameReview gameReview = gameReviewOptional.orElse(gameReviewRepository.save(new GameReview(gameId)));
+			GameDetails game = gameOptional.get();
+            // Read-only, a game that was never reviewed has no review document yet
+            GameReview gameReview = reviewService.getRating(game.getId());
             // Add game details and rating to the model
-            model.addAttribute("game", ModelMapper.fromDocument(game, GameDetails::new));
-            model.addAttribute("rating", gameReview.getRating());
+            model.addAttribute("game", game);
+            model.addAttribute("rating", ModelMapper.fromDocument(gameReview, RatingDetails::new));
 			return "games/detail";
 		};
 	}
 
+    /**
+     * Adds or edits the review of the game by the current user.
+     *
+     * <p>Answers with 409 Conflict if the review was edited or removed since the
+     * version sent in the form was read.</p>
+     */
+    @PostMapping("{id}/reviews")
+    public void saveGameReview(
+            @PathVariable("id") String gameId,
+            @Valid @ModelAttribute ReviewForm reviewForm,
+            BindingResult bindingResult,
+            @AuthenticationPrincipal UserDetails userDetails,
+            HttpServletResponse response) {
+        if (userDetails == null) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        if (bindingResult.hasErrors()) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        Optional<User> userOptional = userRepository.findByUsername(userDetails.getUsername());
+        if (userOptional.isEmpty() || !gameRepository.existsById(gameId)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            reviewService.saveReview(gameId, userOptional.get(),
+                    reviewForm.getRating(), reviewForm.getReview(), reviewForm.getVersion());
+        }
+        catch (OptimisticLockingFailureException e) {
+            response.setStatus(HttpServletResponse.SC_CONFLICT);
+        }
+    }
+
+    @DeleteMapping("{id}/reviews")
+    public void deleteGameReview(
+            @PathVariable("id") String gameId,
+            @AuthenticationPrincipal UserDetails userDetails,
+            HttpServletResponse response) {
+        if (userDetails == null) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        Optional<User> userOptional = userRepository.findByUsername(userDetails.getUsername());
+        if (userOptional.isEmpty()
+                || reviewService.removeReview(gameId, userOptional.get().getId()).isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    @ResponseBody
+    @GetMapping("{id}/rating")
+    public RatingDetails getGameRating(@PathVariable("id") String gameId) {
+        GameReview gameReview = reviewService.getRating(gameId);
+        return ModelMapper.fromDocument(gameReview, RatingDetails::new);
+    }
+
+    /**
+     * Gets a page of the reviews of a game, from the newest to the oldest.
+     *
+     * <p>Pages are requested with the opaque cursor sent in the {@value #NEXT_CURSOR_HEADER} header
+     * of the previous page. The {@code offset} parameter is still supported, but every page
+     * then costs as much as all the previous ones.</p>
+     */
     @ResponseBody
     @GetMapping("{id}/reviews")
     public List<ReviewDetails> getGameReviews(
             @PathVariable("id") String gameId,
             @RequestParam(name = "count", required = false, defaultValue = "10") int count,
             @RequestParam(name = "offset", required = false, defaultValue = "0") int offset,
+            @RequestParam(name = "cursor", required = false) String cursor,
             HttpServletResponse response) {
-        // Get or create game review document
-        Optional<GameReview> gameReviewOptional = gameReviewRepository.findById(gameId);
-        GameReview gameReview = gameReviewOptional.orElse(gameReviewRepository.save(new GameReview(gameId)));
-        Map<String, GameReview.UserGameReview> reviews = gameReview.getReviews();
-        int size = reviews.size();
+        int pageSize = Math.max(1, Math.min(count, MAX_PAGE_SIZE));
+        CursorPage<Review> reviews;
+        try {
+            reviews = cursor == null && offset > 0
+                    ? reviewService.getReviews(gameId, offset, pageSize)
+                    : reviewService.getReviewsAfter(gameId, cursor, pageSize);
+        }
+        catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return List.of();
+        }
         // Set HTTP status to 204 No Content if there are no reviews
-        if (size == 0) {
+        if (cursor == null && offset == 0 && reviews.isEmpty()) {
             response.setStatus(HttpServletResponse.SC_NO_CONTENT);
             return List.of();
         }
         // Set HTTP status to 206 Partial Content if it reaches the end of the reviews
-        if (size <= offset + count) response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-        return ModelMapper.fromDocuments(
-                reviews.values().stream().skip(offset).limit(count).toList(),
-                ReviewDetails::new);
+        if (!reviews.hasNext()) response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        else response.setHeader(NEXT_CURSOR_HEADER, reviews.nextCursor());
+        return DocumentMapper.INSTANCE.toReviewDetails(reviews.content());
     }
 }
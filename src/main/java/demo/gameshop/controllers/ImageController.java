@@ -2,52 +2,147 @@ package demo.gameshop.controllers;
 
 import com.mongodb.client.gridfs.model.GridFSFile;
 import demo.gameshop.services.FileService;
+import demo.gameshop.services.ImageService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.apache.tomcat.util.http.fileupload.IOUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/images")
 @RequiredArgsConstructor
 public class ImageController {
-	
+
+	/**
+	 * GridFS files are never modified in place (a new upload always gets a new id),
+	 * so clients and CDNs are allowed to keep them for as long as they want.
+	 */
+	private static final CacheControl IMAGE_CACHE_CONTROL = CacheControl
+			.maxAge(365, TimeUnit.DAYS)
+			.cachePublic()
+			.immutable();
+
 	private final FileService fileService;
-	
+	private final ImageService imageService;
+
 	@GetMapping("/{id}")
 	public void getImage(
 			@PathVariable String id,
 			@RequestParam(required=false, defaultValue="false") boolean download,
+			@RequestParam(name="w", required=false) Integer width,
+			ServletWebRequest webRequest,
 			HttpServletResponse response) {
 		try {
 			Optional<GridFSFile> fileOptional = fileService.findById(id);
-			if (fileOptional.isPresent()) {
-				GridFSFile file = fileOptional.get();
-                assert file.getMetadata() != null;
-                String contentType = file.getMetadata().getString("_contentType");
-				// Send only image files within this controller
-				if (!contentType.startsWith("image/")) {
-					response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-					return;
-				}
+			if (fileOptional.isEmpty()) {
+				response.setStatus(HttpStatus.NOT_FOUND.value());
+				return;
+			}
+			GridFSFile file = fileOptional.get();
+			assert file.getMetadata() != null;
+			String contentType = file.getMetadata().getString("_contentType");
+			// Send only image files within this controller
+			if (contentType == null || !contentType.startsWith("image/")) {
+				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			// Send the smallest variant that is at least as wide as requested (downloads always get the original)
+			if (width != null && !download) {
+				file = imageService.findVariant(file, width).orElse(file);
+				contentType = file.getMetadata().getString("_contentType");
+			}
+			// Answer with 304 Not Modified if the client already has this version
+			// (also sets the ETag and Last-Modified headers on the response)
+			String eTag = buildETag(file);
+			response.setHeader(HttpHeaders.CACHE_CONTROL, IMAGE_CACHE_CONTROL.getHeaderValue());
+			response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+			if (webRequest.checkNotModified(eTag, file.getUploadDate().getTime())) {
+				return;
+			}
+			response.setContentType(contentType);
+			if (download) {
+				response.setHeader("Content-Disposition", "attachment; filename="+file.getFilename().replace(" ", "_"));
+			}
+			// Send only the requested range if there is one
+			long length = file.getLength();
+			HttpRange range = getRequestedRange(webRequest, eTag);
+			if (range == null) {
 				response.setStatus(HttpStatus.OK.value());
-				response.setContentType(contentType);
-				if (download) {
-					response.setHeader("Content-Disposition", "attachment; filename="+file.getFilename().replace(" ", "_"));
-				}
-				try (InputStream inputStream = fileService.getInputStream(file)) {
-					IOUtils.copyLarge(inputStream, response.getOutputStream());
-				}
+				response.setContentLengthLong(length);
+				fileService.copyRange(file, 0, length - 1, response.getOutputStream());
+				return;
+			}
+			long start, end;
+			try {
+				start = range.getRangeStart(length);
+				end = range.getRangeEnd(length);
 			}
+			catch (IllegalArgumentException e) {
+				// Well formed, but outside of the file
+				response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+				return;
+			}
+			response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+			response.setContentLengthLong(end - start + 1);
+			fileService.copyRange(file, start, end, response.getOutputStream());
 		} catch (IOException | IllegalStateException e) {
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			if (!response.isCommitted()) {
+				response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			}
 			e.printStackTrace();
 		}
-		response.setStatus(HttpStatus.NOT_FOUND.value());
+	}
+
+	/**
+	 * Builds a strong ETag for a GridFS file.
+	 *
+	 * <p>The file id alone already identifies the content since files are never updated,
+	 * the upload date and length are added so a re-imported file with the same id
+	 * is still detected as a different version.</p>
+	 */
+	private static String buildETag(GridFSFile file) {
+		return new StringBuilder("\"")
+				.append(file.getObjectId().toHexString())
+				.append('-')
+				.append(Long.toHexString(file.getUploadDate().getTime()))
+				.append('-')
+				.append(Long.toHexString(file.getLength()))
+				.append('"')
+				.toString();
+	}
+
+	/**
+	 * Gets the single byte range requested by the client.
+	 *
+	 * @return The requested range, or {@code null} if the whole file should be sent
+	 * (no {@code Range} header, an invalid one, an {@code If-Range} that does not match or multiple ranges)
+	 */
+	private static HttpRange getRequestedRange(ServletWebRequest webRequest, String eTag) {
+		String rangeHeader = webRequest.getHeader(HttpHeaders.RANGE);
+		if (rangeHeader == null) return null;
+		// Only honour the range if the client still has the same version of the file
+		String ifRange = webRequest.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange != null && !ifRange.equals(eTag)) return null;
+		List<HttpRange> ranges;
+		try {
+			ranges = HttpRange.parseRanges(rangeHeader);
+		}
+		catch (IllegalArgumentException e) {
+			// An invalid Range header must be ignored (RFC 7233 section 3.1)
+			return null;
+		}
+		// Multiple ranges are rarely used for images, send the full file instead
+		return ranges.size() == 1 ? ranges.get(0) : null;
 	}
 }
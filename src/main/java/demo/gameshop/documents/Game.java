@@ -2,10 +2,10 @@ package demo.gameshop.documents;
 
 import static lombok.AccessLevel.NONE;
 
-import java.util.regex.Pattern;
-
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -13,6 +13,11 @@ import lombok.Getter;
 import lombok.Setter;
 
 @Document
+@CompoundIndexes({
+	// Listing the games of a genre (see GameService), and finding all the genres
+	@CompoundIndex(name = "genre_title", def = "{'genre': 1, 'titleNormalized': 1}"),
+	@CompoundIndex(name = "genre_id", def = "{'genre': 1, '_id': -1}")
+})
 @Getter
 @Setter
 public class Game {
@@ -44,18 +49,73 @@ public class Game {
 		this.titleNormalized = normalizeTitle(title);
 	}
 
-	private static final Pattern AND_PATTERN = Pattern.compile("&+");
-	private static final Pattern PLUS_PATTERN = Pattern.compile("\\++");
-	private static final Pattern REMOVE_PATTERN = Pattern.compile("[^\\w\\s-_']+");
-	private static final Pattern SPACE_PATTERN = Pattern.compile("[\\s-_']+");
-	private static final Pattern TRIM_PATTERN = Pattern.compile("(?:^-+|-+$)+");
+	/** Type of each ASCII character in a title */
+	private static final byte REMOVED = 0, LETTER = 1, SEPARATOR = 2, AND = 3, PLUS = 4;
+	private static final byte[] CHAR_TYPES = new byte[128];
+	static {
+		for (char c = 'a'; c <= 'z'; c++) CHAR_TYPES[c] = LETTER;
+		for (char c = 'A'; c <= 'Z'; c++) CHAR_TYPES[c] = LETTER;
+		for (char c = '0'; c <= '9'; c++) CHAR_TYPES[c] = LETTER;
+		for (char c : " \t\n\u000B\f\r-_'".toCharArray()) CHAR_TYPES[c] = SEPARATOR;
+		CHAR_TYPES['&'] = AND;
+		CHAR_TYPES['+'] = PLUS;
+	}
+
+	/**
+	 * Normalizes a title so it can be used in URLs and to find duplicated titles.
+	 *
+	 * <p>Accents are stripped and letters are lower cased, runs of {@code &} and {@code +}
+	 * become the words {@code and} and {@code plus}, runs of whitespace, dashes, underscores
+	 * and apostrophes become a single dash, and any other character is removed
+	 * (for example "Tést &amp; Game's 2!" becomes {@code test-and-game-s-2}).</p>
+	 *
+	 * <p>Done in a single pass over the title, only titles with non ASCII characters
+	 * need their accents stripped beforehand.</p>
+	 */
 	public static String normalizeTitle(String name) {
-		String result = StringUtils.stripAccents(name).toLowerCase();
-		result = AND_PATTERN.matcher(result).replaceAll(" and ");
-		result = PLUS_PATTERN.matcher(result).replaceAll(" plus ");
-		result = REMOVE_PATTERN.matcher(result).replaceAll("");
-		result = SPACE_PATTERN.matcher(result).replaceAll("-");
-		result = TRIM_PATTERN.matcher(result).replaceAll("");
-		return result;
+		String text = isAscii(name) ? name : StringUtils.stripAccents(name);
+		StringBuilder result = new StringBuilder(text.length() + 8);
+		// Whether a dash goes before the next letter, never at the start or the end
+		boolean separate = false;
+		char previous = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c < CHAR_TYPES.length ? CHAR_TYPES[c] : REMOVED) {
+			case LETTER:
+				if (separate && result.length() > 0) result.append('-');
+				separate = false;
+				result.append(c <= 'Z' && c >= 'A' ? (char) (c + ('a' - 'A')) : c);
+				break;
+			case SEPARATOR:
+				separate = true;
+				break;
+			case AND:
+				// A run of them is a single word
+				if (previous != c) separate = appendWord(result, "and");
+				break;
+			case PLUS:
+				if (previous != c) separate = appendWord(result, "plus");
+				break;
+			default:
+				// Removed, but still breaks runs of '&' and '+'
+				break;
+			}
+			previous = c;
+		}
+		return result.toString();
+	}
+
+	/** Appends a word replacing a symbol, it is separated from what comes before and after it */
+	private static boolean appendWord(StringBuilder result, String word) {
+		if (result.length() > 0) result.append('-');
+		result.append(word);
+		return true;
+	}
+
+	private static boolean isAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) >= 0x80) return false;
+		}
+		return true;
 	}
 }
\ No newline at end of file
@@ -2,10 +2,7 @@ package demo.gameshop.documents;
 
 import static lombok.AccessLevel.NONE;
 
-import java.time.LocalDate;
-import java.util.Collections;
 import java.util.Map;
-import java.util.TreeMap;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -13,20 +10,39 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Review summary of a game.
+ *
+ * <p>The reviews themselves are stored as {@link Review} documents. The rating aggregates
+ * (number of reviews, sum of the ratings and number of reviews per rating) are kept up
+ * to date with {@code $inc} updates whenever a review is added, edited or removed,
+ * so the average rating never needs to be recomputed from the reviews.</p>
+ */
 @Document
 @Getter
-@Setter
+@Setter(NONE)
 public class GameReview {
 
+	/** Lowest rating a review can give */
+	public static final int MIN_RATING = 1;
+	/** Highest rating a review can give */
+	public static final int MAX_RATING = 5;
+
 	/** Should be the same as a game id for a 1-1 relation */
 	@Id
-	@Setter(NONE)
 	private String id;
 	
-	private float rating;
+	/** Number of reviews */
+	private long ratingCount;
+	
+	/** Sum of the ratings of all reviews */
+	private long ratingSum;
 	
-	@Setter(NONE)
-	private Map<String, UserGameReview> reviews;
+	/**
+	 * Number of reviews per rating, keyed by the rating.
+	 * Ratings without reviews may be missing.
+	 */
+	private Map<String, Long> ratingHistogram = Map.of();
 	
 	/** Repository requires constructor with no arguments to work. */
 	@SuppressWarnings("unused")
@@ -35,73 +51,21 @@ public class GameReview {
 	
 	public GameReview(String gameId) {
 		this.id = gameId;
-		reviews = Map.of();
 	}
 	
 	/**
-	 * Adds the review id for the user
-	 * @return This game review
-	 */
-	public GameReview addReview(User user, int rating, String review) {
-		user.addReview(this.id);
-		return addReview(user.getId(), user.getUsername(),
-				user.getFirstName(), user.getLastName(),
-				rating, review);
-	}
-
-	/**
-	 *  Does not remove the review id for the user
-	 *  @return This game review
+	 * @return The average rating, or {@code 0} if there are no reviews
 	 */
-	public GameReview addReview(String id, String username,
-								String firstName, String lastName,
-								int rating, String review) {
-		TreeMap<String, UserGameReview> mutableReviews = new TreeMap<>(this.reviews);
-		UserGameReview userReview = new UserGameReview();
-		userReview.userId = id;
-		userReview.username = username;
-		userReview.firstName = firstName;
-		userReview.lastName = lastName;
-		userReview.rating = rating;
-		userReview.review = review;
-		userReview.reviewDate = LocalDate.now();
-		mutableReviews.put(userReview.userId, userReview);
-		this.reviews = Collections.unmodifiableMap(mutableReviews);
-		return this;
-	}
-
-	/**
-	 *  Removes the review id for the user
-	 *  @return This game review
-	 */
-	public GameReview removeReview(User user) {
-		user.removeReview(this.id);
-		return removeReview(user.getId());
+	public float getRating() {
+		return ratingCount == 0 ? 0 : (float) ratingSum / ratingCount;
 	}
 	
 	/**
-	 *  Does not remove the review id for the user
-	 *  @return This game review
+	 * @param rating The rating, from {@link #MIN_RATING} to {@link #MAX_RATING}
+	 * @return The number of reviews with the given rating
 	 */
-	public GameReview removeReview(String userId) {
-		TreeMap<String, UserGameReview> mutableReviews = new TreeMap<>(this.reviews);
-		mutableReviews.remove(userId);
-		this.reviews = Collections.unmodifiableMap(mutableReviews);
-		return this;
+	public long getRatingCount(int rating) {
+		Long count = ratingHistogram.get(Integer.toString(rating));
+		return count == null ? 0 : count;
 	}
-	
-	@Getter
-	public static class UserGameReview {
-		private String userId;
-		private String username;
-		private String firstName;
-		private String lastName;
-		
-		private int rating;
-		private String review;
-		private LocalDate reviewDate;
-		private LocalDate editDate;
-
-        private UserGameReview() {}
-    }
 }
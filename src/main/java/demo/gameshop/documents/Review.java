@@ -0,0 +1,81 @@
+package demo.gameshop.documents;
+
+import static lombok.AccessLevel.NONE;
+
+import java.time.LocalDate;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A review of a game by a user. Each user can only review a game once.
+ *
+ * <p>Reviews are stored one per document (instead of inside the {@link GameReview} of the game),
+ * and the {@code game_date} index allows paging through the reviews of a game
+ * from the newest to the oldest without reading the others.</p>
+ */
+@Document
+@CompoundIndexes({
+	@CompoundIndex(name = "game_date", def = "{'gameId': 1, 'reviewDate': -1, '_id': -1}"),
+	@CompoundIndex(name = "game_user", def = "{'gameId': 1, 'userId': 1}", unique = true)
+})
+@Getter
+@Setter
+public class Review {
+
+	@Id
+	@Setter(NONE)
+	private String id;
+
+	/**
+	 * This field is set on constructor
+	 */
+	@Setter(NONE)
+	private String gameId;
+
+	/**
+	 * This field is set on constructor
+	 */
+	@Setter(NONE)
+	private String userId;
+	private String username;
+	private String firstName;
+	private String lastName;
+
+	private int rating;
+	private String review;
+	private LocalDate reviewDate;
+	private LocalDate editDate;
+
+	/**
+	 * Incremented on every edit, reviews written before versioning have none
+	 */
+	@Version
+	@Setter(NONE)
+	private Long version;
+
+	/** Repository requires constructor with no arguments to work. */
+	@SuppressWarnings("unused")
+	private Review()
+	{}
+
+	/**
+	 * Creates a review of the game by the user, dated today.
+	 */
+	public Review(String gameId, User user, int rating, String review) {
+		this.gameId = gameId;
+		this.userId = user.getId();
+		this.username = user.getUsername();
+		this.firstName = user.getFirstName();
+		this.lastName = user.getLastName();
+		this.rating = rating;
+		this.review = review;
+		this.reviewDate = LocalDate.now();
+	}
+}
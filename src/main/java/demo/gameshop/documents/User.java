@@ -2,8 +2,10 @@ package demo.gameshop.documents;
 
 import static lombok.AccessLevel.NONE;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -50,13 +52,20 @@ public class User {
 	
 	/**
 	 * This field is set on constructor
-	 * The values are the ids of game reviews
+	 * The values are the ids of the reviewed games, updated by {@link demo.gameshop.services.ReviewService}
 	 */
 	@Setter(NONE)
 	private Set<String> reviews;
 
 	private boolean disabled;
 
+	/**
+	 * The sessions logged out whose cookies may not have expired yet (see
+	 * {@link demo.gameshop.helpers.CookieSecurityContextRepository}), updated by {@link demo.gameshop.repositories.UserRepository}
+	 */
+	@Setter(NONE)
+	private List<RevokedSession> revokedSessions;
+
 //  Other fields in UserDetails that are not used currently
 //	private boolean accountExpired;
 //	private boolean credentialsExpired;
@@ -153,20 +162,6 @@ public class User {
 		return this;
 	}
 	
-	public User addReview(String reviewId) {
-		TreeSet<String> mutableReviews = new TreeSet<>(this.reviews);
-		mutableReviews.add(reviewId);
-		this.reviews = Collections.unmodifiableSet(mutableReviews);
-		return this;
-	}
-	
-	public User removeReview(String reviewId) {
-		TreeSet<String> mutableReviews = new TreeSet<>(this.reviews);
-		mutableReviews.remove(reviewId);
-		this.reviews = Collections.unmodifiableSet(mutableReviews);
-		return this;
-	}
-	
 	public UserDetails toUserDetails() {
 		return org.springframework.security.core.userdetails.User.builder()
 				.username(this.username)
@@ -175,4 +170,11 @@ public class User {
 				.disabled(this.disabled)
 				.build();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A logged out session.
+	 * @param id The id of the session
+	 * @param expiresAt The time every cookie of the session expired by, after which it can be removed
+	 */
+	public record RevokedSession(String id, Instant expiresAt) {}
+}
@@ -0,0 +1,88 @@
+package demo.gameshop.helpers;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import lombok.NonNull;
+
+/**
+ * {@link PasswordEncoder} limiting how many passwords are hashed at the same time.
+ *
+ * <p>Hashing a password is made to be slow and uses a whole core, so hashing more passwords
+ * at a time than there are cores only makes every one of them slower. Calls wait for their turn
+ * up to a maximum time, after which they fail with a {@link BusyException} instead of piling up
+ * (for example during a credential stuffing attack).</p>
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+	private final PasswordEncoder delegate;
+	private final Semaphore permits;
+	private final long maxWaitNanos;
+
+	/**
+	 * @param delegate The encoder hashing the passwords
+	 * @param maxConcurrentHashes The maximum number of passwords hashed at the same time
+	 * @param maxWait The maximum time to wait for another hash to finish
+	 */
+	public BoundedPasswordEncoder(@NonNull PasswordEncoder delegate, int maxConcurrentHashes, @NonNull Duration maxWait) {
+		this.delegate = delegate;
+		// Fair, so the calls waiting the longest are served first
+		this.permits = new Semaphore(maxConcurrentHashes, true);
+		this.maxWaitNanos = maxWait.toNanos();
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		acquire();
+		try {
+			return delegate.encode(rawPassword);
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		acquire();
+		try {
+			return delegate.matches(rawPassword, encodedPassword);
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		// Does not hash anything
+		return delegate.upgradeEncoding(encodedPassword);
+	}
+
+	private void acquire() {
+		try {
+			if (permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) return;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new BusyException();
+	}
+
+	/**
+	 * Thrown when a password could not be hashed in time because too many others are being hashed.
+	 * Answered with {@code 503 Service Unavailable}.
+	 */
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public static class BusyException extends AuthenticationServiceException {
+		public BusyException() {
+			super("Too many passwords are being hashed, try again later");
+		}
+	}
+}
@@ -0,0 +1,446 @@
+package demo.gameshop.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.DeferredSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+
+/**
+ * {@link SecurityContextRepository} keeping the authenticated user in an encrypted cookie
+ * instead of the HTTP session, so any instance of the application can serve any request.
+ *
+ * <p>The cookie holds the username, the authorities, a version of the password, the id of the session
+ * and the time it was issued, encrypted with AES-GCM, whose authentication tag also makes any change to the cookie detected.
+ * It is encrypted with the first configured key, and decrypted with whichever key it was encrypted with,
+ * so keys can be rotated by adding a new one first and removing the old one once its cookies expired.
+ * The keys are derived from the configured secrets with HKDF-SHA256.</p>
+ *
+ * <p>Cookies are valid for the configured maximum age, and are renewed by {@link #renewalFilter()}
+ * once older than half of it, so active users stay logged in. On every request the user is loaded
+ * again with the {@link UserDetailsService} (which is expected to cache it): the cookie is rejected
+ * if the user was deleted or disabled, or if its authorities or its password changed since it was issued.
+ * Each login starts a new session, whose id is kept when the cookie is renewed. Logging out revokes the
+ * session (see {@link #logoutHandler()} and {@link SessionRevocations}), so a copy of its cookie is
+ * rejected too, while the sessions of the user on its other devices stay open.</p>
+ */
+public class CookieSecurityContextRepository implements SecurityContextRepository {
+
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	private static final byte VERSION = 3;
+	private static final int KEY_ID_LENGTH = 4;
+	/** Length of the hash of the password kept in the cookie, enough to detect a change without revealing it */
+	private static final int PASSWORD_VERSION_LENGTH = 4;
+	private static final int SESSION_ID_LENGTH = 16;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final String TOKEN_ATTRIBUTE = CookieSecurityContextRepository.class.getName() + ".token";
+
+	private final UserDetailsService userDetailsService;
+	private final SessionRevocations revocations;
+	/** Keys by id, the first one encrypts */
+	private final List<Key> keys;
+	private final String cookieName;
+	private final Duration maxAge;
+	private final Clock clock;
+	private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * @param userDetailsService Service loading the users, to check they are still allowed to log in
+	 * @param revocations Store of the times the sessions of the users were revoked at
+	 * @param secrets The secrets the keys are derived from, the first one is used to encrypt
+	 * @param cookieName The name of the cookie
+	 * @param maxAge The time a cookie is valid for after being issued
+	 * @param clock The clock giving the current time
+	 */
+	public CookieSecurityContextRepository(
+			@NonNull UserDetailsService userDetailsService,
+			@NonNull SessionRevocations revocations,
+			@NonNull List<String> secrets,
+			@NonNull String cookieName,
+			@NonNull Duration maxAge,
+			@NonNull Clock clock) {
+		if (secrets.isEmpty()) throw new IllegalArgumentException("At least one secret is required");
+		this.userDetailsService = userDetailsService;
+		this.revocations = revocations;
+		this.keys = secrets.stream().map(Key::derive).toList();
+		this.cookieName = cookieName;
+		this.maxAge = maxAge;
+		this.clock = clock;
+	}
+
+	/**
+	 * Generates a random secret, for running a single instance without configuring one.
+	 * Cookies encrypted with it cannot be read anymore once the application is restarted.
+	 */
+	public static String generateSecret() {
+		byte[] secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+		return Base64.getEncoder().encodeToString(secret);
+	}
+
+	@Override
+	public DeferredSecurityContext loadDeferredContext(HttpServletRequest request) {
+		return new DeferredSecurityContext() {
+			private SecurityContext context;
+
+			@Override
+			public SecurityContext get() {
+				if (context == null) context = load(request);
+				return context;
+			}
+
+			@Override
+			public boolean isGenerated() {
+				return get().getAuthentication() == null;
+			}
+		};
+	}
+
+	@Override
+	@Deprecated
+	public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+		return load(requestResponseHolder.getRequest());
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Starts a new session, as this is called on login.
+	 */
+	@Override
+	public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+		save(context, request, response, newSessionId());
+	}
+
+	private void save(SecurityContext context, HttpServletRequest request, HttpServletResponse response, String sessionId) {
+		Authentication authentication = context.getAuthentication();
+		if (authentication == null || trustResolver.isAnonymous(authentication)) {
+			// Logged out
+			if (readToken(request) != null) writeCookie(request, response, "", Duration.ZERO);
+			return;
+		}
+		UserDetails user;
+		try {
+			// The password of the authenticated user is erased once checked
+			user = userDetailsService.loadUserByUsername(authentication.getName());
+		}
+		catch (UsernameNotFoundException e) {
+			// Deleted meanwhile
+			if (readToken(request) != null) writeCookie(request, response, "", Duration.ZERO);
+			return;
+		}
+		Token token = new Token(authentication.getName(), authorities(authentication.getAuthorities()),
+				passwordVersion(user), sessionId, clock.millis());
+		writeCookie(request, response, encrypt(token), maxAge);
+		request.setAttribute(TOKEN_ATTRIBUTE, token);
+	}
+
+	@Override
+	public boolean containsContext(HttpServletRequest request) {
+		return readToken(request) != null;
+	}
+
+	/**
+	 * Creates the filter renewing the cookies older than half of their maximum age,
+	 * to add after the filter loading the security context.
+	 */
+	public OncePerRequestFilter renewalFilter() {
+		return new OncePerRequestFilter() {
+			@Override
+			protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+					FilterChain filterChain) throws ServletException, IOException {
+				Token token = readToken(request);
+				if (token != null && clock.millis() - token.issuedAt() > maxAge.toMillis() / 2) {
+					SecurityContext context = SecurityContextHolder.getContext();
+					Authentication authentication = context.getAuthentication();
+					if (authentication != null && authentication.getName().equals(token.username())) {
+						// Same session, so revoking it also revokes the cookies it had before
+						save(context, request, response, token.sessionId());
+					}
+				}
+				filterChain.doFilter(request, response);
+			}
+		};
+	}
+
+	/**
+	 * Creates the handler revoking on logout the session of the cookie of the request, as a copy of the cookie
+	 * would otherwise stay valid until it expires. The other sessions of the user are left open.
+	 */
+	public LogoutHandler logoutHandler() {
+		return (request, response, authentication) -> {
+			Token token = readToken(request);
+			if (token != null && authentication != null && authentication.getName().equals(token.username())) {
+				// Every cookie of the session expires by then, as it cannot be renewed anymore
+				revocations.revokeSession(token.username(), token.sessionId(), clock.instant().plus(maxAge));
+			}
+		};
+	}
+
+	private SecurityContext load(HttpServletRequest request) {
+		SecurityContext context = new SecurityContextImpl();
+		Token token = readToken(request);
+		if (token == null) return context;
+		UserDetails user;
+		try {
+			user = userDetailsService.loadUserByUsername(token.username());
+		}
+		catch (UsernameNotFoundException e) {
+			return context;
+		}
+		// Revoked once the user is disabled, or its authorities or its password changed
+		if (!user.isEnabled() || !user.isAccountNonLocked() || !user.isAccountNonExpired()
+				|| !authorities(user.getAuthorities()).equals(token.authorities())
+				|| passwordVersion(user) != token.passwordVersion()) {
+			return context;
+		}
+		if (revocations.isSessionRevoked(token.username(), token.sessionId())) return context;
+		if (user instanceof CredentialsContainer credentials) credentials.eraseCredentials();
+		context.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+		return context;
+	}
+
+	/**
+	 * Reads the token of the cookie of the request, once per request.
+	 * @return The token, or {@code null} if there is no cookie or it is invalid or expired
+	 */
+	private Token readToken(HttpServletRequest request) {
+		if (request.getAttribute(TOKEN_ATTRIBUTE) instanceof Token token) return token;
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null) return null;
+		for (Cookie cookie : cookies) {
+			if (!cookieName.equals(cookie.getName())) continue;
+			Token token = decrypt(cookie.getValue());
+			if (token == null || clock.millis() - token.issuedAt() >= maxAge.toMillis()) return null;
+			request.setAttribute(TOKEN_ATTRIBUTE, token);
+			return token;
+		}
+		return null;
+	}
+
+	private void writeCookie(HttpServletRequest request, HttpServletResponse response, String value, Duration maxAge) {
+		String path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+		ResponseCookie cookie = ResponseCookie.from(cookieName, value)
+				.path(path)
+				.maxAge(maxAge)
+				.httpOnly(true)
+				.secure(request.isSecure())
+				.sameSite("Lax")
+				.build();
+		response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+	}
+
+	private String encrypt(Token token) {
+		Key key = keys.get(0);
+		byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(iv);
+		try {
+			Cipher cipher = Cipher.getInstance(CIPHER);
+			cipher.init(Cipher.ENCRYPT_MODE, key.key(), new GCMParameterSpec(TAG_BITS, iv));
+			byte[] header = header(key);
+			cipher.updateAAD(header);
+			byte[] encrypted = cipher.doFinal(token.toBytes());
+			ByteBuffer value = ByteBuffer.allocate(header.length + iv.length + encrypted.length)
+					.put(header)
+					.put(iv)
+					.put(encrypted);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(value.array());
+		}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** @return The decrypted token, or {@code null} if the value was not encrypted by one of the keys */
+	private Token decrypt(String value) {
+		byte[] bytes;
+		try {
+			bytes = Base64.getUrlDecoder().decode(value);
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (bytes.length < 1 + KEY_ID_LENGTH + IV_LENGTH + TAG_BITS / 8 || bytes[0] != VERSION) return null;
+		byte[] keyId = Arrays.copyOfRange(bytes, 1, 1 + KEY_ID_LENGTH);
+		Key key = keys.stream().filter(k -> Arrays.equals(k.id(), keyId)).findFirst().orElse(null);
+		// Encrypted with a key that was removed
+		if (key == null) return null;
+		try {
+			Cipher cipher = Cipher.getInstance(CIPHER);
+			int ivOffset = 1 + KEY_ID_LENGTH;
+			cipher.init(Cipher.DECRYPT_MODE, key.key(), new GCMParameterSpec(TAG_BITS, bytes, ivOffset, IV_LENGTH));
+			cipher.updateAAD(bytes, 0, ivOffset);
+			int dataOffset = ivOffset + IV_LENGTH;
+			return Token.fromBytes(cipher.doFinal(bytes, dataOffset, bytes.length - dataOffset));
+		}
+		catch (GeneralSecurityException | IOException e) {
+			// Changed or corrupted
+			return null;
+		}
+	}
+
+	/** Version and id of the key, not encrypted but authenticated */
+	private static byte[] header(Key key) {
+		return ByteBuffer.allocate(1 + KEY_ID_LENGTH).put(VERSION).put(key.id()).array();
+	}
+
+	private String newSessionId() {
+		byte[] id = new byte[SESSION_ID_LENGTH];
+		random.nextBytes(id);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+	}
+
+	private static Set<String> authorities(Iterable<? extends GrantedAuthority> authorities) {
+		Set<String> result = new TreeSet<>();
+		for (GrantedAuthority authority : authorities) result.add(authority.getAuthority());
+		return result;
+	}
+
+	/**
+	 * Hashes the stored hash of the password of a user, so the cookies issued before it changed are rejected.
+	 * Upgrading the hash on login (see {@link org.springframework.security.core.userdetails.UserDetailsPasswordService})
+	 * also rejects the cookies of the other devices, once.
+	 */
+	private static int passwordVersion(UserDetails user) {
+		String password = user.getPassword() != null ? user.getPassword() : "";
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+			return ByteBuffer.wrap(hash, 0, PASSWORD_VERSION_LENGTH).getInt();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Stores the ids of the revoked sessions of the users, read on every request
+	 * (and then expected to be cached).
+	 */
+	public interface SessionRevocations {
+
+		/** @return Whether a session of a user was revoked */
+		boolean isSessionRevoked(String username, String sessionId);
+
+		/**
+		 * Revokes a session of a user.
+		 * @param expiresAt The time all the cookies of the session expired by, after which it can be forgotten
+		 */
+		void revokeSession(String username, String sessionId, Instant expiresAt);
+	}
+
+	private record Key(byte[] id, SecretKey key) {
+
+		private static final String HMAC = "HmacSHA256";
+		private static final byte[] SALT = "demo.gameshop.sessions".getBytes(StandardCharsets.UTF_8);
+
+		/**
+		 * Derives an AES-256 key from a secret with HKDF-SHA256 (RFC 5869), along with its id,
+		 * derived separately so it reveals nothing about the key.
+		 */
+		static Key derive(String secret) {
+			try {
+				Mac mac = Mac.getInstance(HMAC);
+				mac.init(new SecretKeySpec(SALT, HMAC));
+				byte[] pseudoRandomKey = mac.doFinal(secret.getBytes(StandardCharsets.UTF_8));
+				byte[] key = expand(pseudoRandomKey, "cookie encryption key");
+				byte[] id = Arrays.copyOf(expand(pseudoRandomKey, "cookie key id"), KEY_ID_LENGTH);
+				return new Key(id, new SecretKeySpec(key, "AES"));
+			}
+			catch (GeneralSecurityException e) {
+				// Every Java platform is required to support HmacSHA256
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/** Expands the key to 32 bytes, which needs a single block of HMAC-SHA256 */
+		private static byte[] expand(byte[] pseudoRandomKey, String info) throws GeneralSecurityException {
+			Mac mac = Mac.getInstance(HMAC);
+			mac.init(new SecretKeySpec(pseudoRandomKey, HMAC));
+			mac.update(info.getBytes(StandardCharsets.UTF_8));
+			return mac.doFinal(new byte[] { 1 });
+		}
+	}
+
+	private record Token(String username, Set<String> authorities, int passwordVersion, String sessionId, long issuedAt) {
+
+		byte[] toBytes() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeLong(issuedAt);
+				out.writeInt(passwordVersion);
+				out.writeUTF(sessionId);
+				out.writeUTF(username);
+				out.writeShort(authorities.size());
+				for (String authority : authorities) out.writeUTF(authority);
+			}
+			catch (IOException e) {
+				// Not thrown when writing to an array
+				throw new IllegalStateException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		static Token fromBytes(byte[] bytes) throws IOException {
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+				long issuedAt = in.readLong();
+				int passwordVersion = in.readInt();
+				String sessionId = in.readUTF();
+				String username = in.readUTF();
+				int count = in.readUnsignedShort();
+				List<String> authorities = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) authorities.add(in.readUTF());
+				return new Token(username, new TreeSet<>(authorities), passwordVersion, sessionId, issuedAt);
+			}
+		}
+	}
+}
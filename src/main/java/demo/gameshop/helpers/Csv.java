@@ -0,0 +1,122 @@
+package demo.gameshop.helpers;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes CSV records (RFC 4180): values separated by commas, records by line breaks,
+ * and values with commas, quotes or line breaks enclosed in quotes, with their quotes doubled.
+ *
+ * <p>Values that a spreadsheet would run as a formula can be neutralized before being written
+ * (see {@link #escapeFormula(String)}), and restored once read (see {@link #unescapeFormula(String)}).</p>
+ */
+public final class Csv {
+	private Csv() {}
+
+	/** Byte order mark some editors write at the start of UTF-8 files, read as the first character */
+	public static final char BOM = '\uFEFF';
+	/** Characters a spreadsheet starts a formula with, the tab and carriage return hiding one after them */
+	private static final String FORMULA_CHARS = "=+-@\t\r";
+	private static final char FORMULA_ESCAPE = '\'';
+
+	/**
+	 * Reads the next record, one character at a time (the reader should be buffered).
+	 * @param reader The reader, able to push back at least one character
+	 * @return The values of the record, or {@code null} at the end of the input
+	 * @throws IOException if the input could not be read or ends inside a quoted value
+	 */
+	public static List<String> readRecord(PushbackReader reader) throws IOException {
+		int c = reader.read();
+		if (c == -1) return null;
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			if (quoted) {
+				if (c == -1) throw new IOException("The input ends inside a quoted value");
+				if (c == '"') {
+					int next = reader.read();
+					if (next != '"') {
+						// Closing quote, the next character is read as outside of the quotes
+						quoted = false;
+						c = next;
+						continue;
+					}
+				}
+				value.append((char) c);
+			}
+			else if (c == '"' && value.isEmpty()) {
+				quoted = true;
+			}
+			else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			}
+			else if (c == '\r' || c == '\n' || c == -1) {
+				if (c == '\r') {
+					int next = reader.read();
+					if (next != '\n' && next != -1) reader.unread(next);
+				}
+				values.add(value.toString());
+				return values;
+			}
+			else {
+				value.append((char) c);
+			}
+			c = reader.read();
+		}
+	}
+
+	/**
+	 * Prefixes with {@code '} a value a spreadsheet would run as a formula, so it is shown as text (CSV injection).
+	 * The values already starting with {@code '} before such a character are prefixed too, so
+	 * {@link #unescapeFormula(String)} always gives back the original value.
+	 * @param value The value, may be {@code null}
+	 * @return The value to write
+	 */
+	public static String escapeFormula(String value) {
+		return isFormula(value) ? FORMULA_ESCAPE + value : value;
+	}
+
+	/**
+	 * Removes the prefix added by {@link #escapeFormula(String)}.
+	 * @param value The value read, may be {@code null}
+	 * @return The original value
+	 */
+	public static String unescapeFormula(String value) {
+		if (value == null || value.isEmpty() || value.charAt(0) != FORMULA_ESCAPE) return value;
+		String unescaped = value.substring(1);
+		return isFormula(unescaped) ? unescaped : value;
+	}
+
+	/** @return Whether the value starts with a formula character, after any number of {@code '} */
+	private static boolean isFormula(String value) {
+		if (value == null) return false;
+		int i = 0;
+		while (i < value.length() && value.charAt(i) == FORMULA_ESCAPE) i++;
+		return i < value.length() && FORMULA_CHARS.indexOf(value.charAt(i)) != -1;
+	}
+
+	/**
+	 * Writes a record followed by a line break.
+	 * @param out Where to write the record
+	 * @param values The values of the record, {@code null} values are written empty
+	 * @throws IOException if the record could not be written
+	 */
+	public static void writeRecord(Appendable out, List<String> values) throws IOException {
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) out.append(',');
+			String value = values.get(i);
+			if (value == null) continue;
+			if (value.indexOf(',') == -1 && value.indexOf('"') == -1
+					&& value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+				out.append(value);
+				continue;
+			}
+			out.append('"').append(value.replace("\"", "\"\"")).append('"');
+		}
+		out.append("\r\n");
+	}
+}
@@ -0,0 +1,87 @@
+package demo.gameshop.helpers;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+import org.mapstruct.ReportingPolicy;
+import org.mapstruct.factory.Mappers;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.documents.Review;
+import demo.gameshop.documents.User;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.models.GameForm;
+import demo.gameshop.models.ReviewDetails;
+import demo.gameshop.models.UserDetails;
+import demo.gameshop.models.UserForm;
+
+/**
+ * Maps the documents to the models, with code generated at compile time by MapStruct.
+ *
+ * <p>The generated implementation calls the getters and setters directly, one field after
+ * the other, without reflection, suppliers or streams. The list variants map into a list
+ * sized up front, and the stream variants map the documents lazily as they are read, so the
+ * first models of a repository stream are available before the whole collection is read.
+ * Big lists of games can also be split between all the cores
+ * (see {@link #toGameDetails(List, int)}).</p>
+ *
+ * <p>Every property of a model must be mapped or explicitly ignored, so a field added to a
+ * model without its document counterpart fails the build instead of being left empty.
+ * The {@code update} methods back the {@link demo.gameshop.interfaces.models.Mappable}
+ * implementations of the models, so both ways of mapping give the same result.</p>
+ */
+@Mapper(unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface DocumentMapper {
+
+	DocumentMapper INSTANCE = Mappers.getMapper(DocumentMapper.class);
+
+	/** Number of documents from which mapping a list is split between all the cores, by default */
+	int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+	GameDetails toGameDetails(Game game);
+
+	List<GameDetails> toGameDetails(List<Game> games);
+
+	/**
+	 * Maps a list of games, splitting the work between all the cores (with the common fork-join pool)
+	 * when there are at least {@code parallelThreshold} games.
+	 * @param parallelThreshold The number of games from which they are mapped in parallel,
+	 *                          see {@link #DEFAULT_PARALLEL_THRESHOLD}
+	 * @return The models, in the same order as the games
+	 */
+	default List<GameDetails> toGameDetails(List<Game> games, int parallelThreshold) {
+		if (games.size() < parallelThreshold) return toGameDetails(games);
+		return games.parallelStream().map(this::toGameDetails).toList();
+	}
+
+	Stream<GameDetails> toGameDetails(Stream<Game> games);
+
+	void updateGameDetails(Game game, @MappingTarget GameDetails details);
+
+	@Mapping(target = "imageFile", ignore = true)
+	GameForm toGameForm(Game game);
+
+	@Mapping(target = "imageFile", ignore = true)
+	void updateGameForm(Game game, @MappingTarget GameForm form);
+
+	@Mapping(target = "imageUrl", ignore = true)
+	UserDetails toUserDetails(User user);
+
+	Stream<UserDetails> toUserDetails(Stream<User> users);
+
+	@Mapping(target = "imageUrl", ignore = true)
+	void updateUserDetails(User user, @MappingTarget UserDetails details);
+
+	UserForm toUserForm(User user);
+
+	void updateUserForm(User user, @MappingTarget UserForm form);
+
+	ReviewDetails toReviewDetails(Review review);
+
+	List<ReviewDetails> toReviewDetails(List<Review> reviews);
+
+	void updateReviewDetails(Review review, @MappingTarget ReviewDetails details);
+}
@@ -1,11 +1,20 @@
 package demo.gameshop.helpers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import demo.gameshop.interfaces.models.Mappable;
 
+/**
+ * Maps documents to any {@link Mappable} model, one new model per document.
+ *
+ * <p>The documents with generated mappers are better mapped with {@link DocumentMapper},
+ * which does not go through a {@link Supplier} and the {@link Mappable} interface for each one,
+ * and can map lazily or in parallel. This is still used for the other models.</p>
+ */
 public final class ModelMapper {
     private ModelMapper() {}
 
@@ -13,12 +22,28 @@ public final class ModelMapper {
         return (M) supplier.get().mapper(doc);
     }
 
+    /**
+     * Maps every document of an array, in a plain loop into a list of the right size.
+     * @return An unmodifiable list of the models
+     */
     public static <D, M extends Mappable<D, M>> List<M> fromDocuments(D[] docs, Supplier<M> supplier) {
-        return fromDocuments(Stream.of(docs), supplier);
+        List<M> models = new ArrayList<>(docs.length);
+        for (D doc : docs) {
+            models.add(supplier.get().mapper(doc));
+        }
+        return Collections.unmodifiableList(models);
     }
 
+    /**
+     * Maps every document of a list, in a plain loop into a list of the right size.
+     * @return An unmodifiable list of the models
+     */
     public static <D, M extends Mappable<D, M>> List<M> fromDocuments(List<D> docs, Supplier<M> supplier) {
-        return fromDocuments(docs.stream(), supplier);
+        List<M> models = new ArrayList<>(docs.size());
+        for (D doc : docs) {
+            models.add(supplier.get().mapper(doc));
+        }
+        return Collections.unmodifiableList(models);
     }
 
     public static <D, M extends Mappable<D, M>> List<M> fromDocuments(Stream<D> docs, Supplier<M> supplier) {
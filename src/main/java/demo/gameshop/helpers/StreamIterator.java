@@ -0,0 +1,48 @@
+package demo.gameshop.helpers;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Iterator over a stream that closes the stream once it is fully read.
+ *
+ * <p>Used to give views a stream backed by a MongoDB cursor, as {@code th:each} reads
+ * iterators one element at a time. If the view stops before the end (for example on an error),
+ * the iterator is closed after the request completes, as any {@link AutoCloseable} model
+ * attribute (see {@link demo.gameshop.WebConfig}).</p>
+ *
+ * @param <T> The type of the elements
+ */
+public final class StreamIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private final Stream<T> stream;
+	private final Iterator<T> iterator;
+	private boolean closed;
+
+	public StreamIterator(Stream<T> stream) {
+		this.stream = stream;
+		this.iterator = stream.iterator();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) return false;
+		if (iterator.hasNext()) return true;
+		close();
+		return false;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return iterator.next();
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		stream.close();
+	}
+}
@@ -0,0 +1,74 @@
+package demo.gameshop.migrations;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import demo.gameshop.documents.GameReview;
+import demo.gameshop.documents.Review;
+import demo.gameshop.services.ReviewService;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Moves the reviews embedded in {@link GameReview} documents (the old {@code reviews} map,
+ * keyed by user id) into their own {@link Review} documents.
+ *
+ * <p>Runs on startup and only touches the game reviews that still have the map, so it is
+ * a no-op once every game has been migrated. The reviews are upserted by game and user,
+ * so an interrupted migration can safely run again.</p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ReviewMigration implements ApplicationRunner {
+
+	private final MongoOperations mongoOperations;
+	private final ReviewService reviewService;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		String gameReviewCollection = mongoOperations.getCollectionName(GameReview.class);
+		Query legacy = Query.query(Criteria.where("reviews").exists(true));
+		try (Stream<Document> gameReviews = mongoOperations.stream(legacy, Document.class, gameReviewCollection)) {
+			gameReviews.forEach(gameReview -> migrate(gameReview, gameReviewCollection));
+		}
+	}
+
+	private void migrate(Document gameReview, String gameReviewCollection) {
+		// Stored as an ObjectId, while the game id of a review is stored as a string
+		Object id = gameReview.get("_id");
+		String gameId = id.toString();
+		Document reviews = gameReview.get("reviews", Document.class);
+		if (reviews != null && !reviews.isEmpty()) {
+			BulkOperations bulk = mongoOperations.bulkOps(BulkMode.UNORDERED, Review.class);
+			for (Object value : reviews.values()) {
+				Document review = (Document) value;
+				String userId = review.getString("userId");
+				// Keep the review if it was already migrated
+				Update update = new Update();
+				for (String field : List.of("username", "firstName", "lastName", "rating", "review", "reviewDate", "editDate")) {
+					if (review.containsKey(field)) update.setOnInsert(field, review.get(field));
+				}
+				bulk.upsert(
+						Query.query(Criteria.where("gameId").is(gameId).and("userId").is(userId)),
+						update);
+			}
+			bulk.execute();
+			// The migrated reviews were not counted in the rating of the game
+			reviewService.recomputeRating(gameId);
+		}
+		mongoOperations.updateFirst(
+				Query.query(Criteria.where("_id").is(id)),
+				new Update().unset("reviews"),
+				gameReviewCollection);
+	}
+}
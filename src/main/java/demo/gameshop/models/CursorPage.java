@@ -0,0 +1,22 @@
+package demo.gameshop.models;
+
+import java.util.List;
+
+/**
+ * A page of results read with keyset pagination.
+ *
+ * @param <T> The type of the results
+ * @param content The results of the page
+ * @param nextCursor The opaque cursor to request the next page with, {@code null} on the last page
+ */
+public record CursorPage<T>(List<T> content, String nextCursor) {
+
+	/** @return Whether there are more results after this page */
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+	public boolean isEmpty() {
+		return content.isEmpty();
+	}
+}
@@ -1,8 +1,10 @@
 package demo.gameshop.models;
 
 import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.interfaces.models.Mappable;
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.Setter;
 
 @Getter
@@ -16,12 +18,8 @@ public class GameDetails implements Mappable<Game, GameDetails> {
 	private String imageUrl;
 
 	@Override
-	public GameDetails mapper(Game doc) {
-		this.id = doc.getId();
-		this.title = doc.getTitle();
-		this.titleNormalized = doc.getTitleNormalized();
-		this.genre = doc.getGenre();
-		this.imageUrl = doc.getImageUrl();
+	public GameDetails mapper(@NonNull Game doc) {
+		DocumentMapper.INSTANCE.updateGameDetails(doc, this);
 		return this;
 	}
 }
@@ -4,6 +4,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import demo.gameshop.annotations.FileValidation;
 import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.interfaces.models.Mappable;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -35,11 +36,7 @@ public class GameForm implements Mappable<Game, GameForm> {
 
 	@Override
 	public GameForm mapper(@NonNull Game doc) {
-		this.id = doc.getId();
-		this.title = doc.getTitle();
-		this.titleNormalized = doc.getTitleNormalized();
-		this.genre = doc.getGenre();
-		this.imageUrl = doc.getImageUrl();
+		DocumentMapper.INSTANCE.updateGameForm(doc, this);
 		return this;
 	}
 }
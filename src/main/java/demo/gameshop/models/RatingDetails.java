@@ -0,0 +1,28 @@
+package demo.gameshop.models;
+
+import demo.gameshop.documents.GameReview;
+import demo.gameshop.interfaces.models.Mappable;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class RatingDetails implements Mappable<GameReview, RatingDetails> {
+	
+	private float average;
+	private long count;
+	/** Number of reviews per rating, index {@code 0} holds the reviews with the lowest rating */
+	private long[] histogram;
+
+	@Override
+	public RatingDetails mapper(@NonNull GameReview doc) {
+		this.average = doc.getRating();
+		this.count = doc.getRatingCount();
+		this.histogram = new long[GameReview.MAX_RATING - GameReview.MIN_RATING + 1];
+		for (int rating = GameReview.MIN_RATING; rating <= GameReview.MAX_RATING; rating++) {
+			this.histogram[rating - GameReview.MIN_RATING] = doc.getRatingCount(rating);
+		}
+		return this;
+	}
+}
@@ -1,7 +1,7 @@
 package demo.gameshop.models;
 
-import demo.gameshop.documents.Game;
-import demo.gameshop.documents.GameReview;
+import demo.gameshop.documents.Review;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.interfaces.models.Mappable;
 import lombok.Getter;
 import lombok.NonNull;
@@ -11,7 +11,7 @@ import java.time.LocalDate;
 
 @Getter
 @Setter
-public class ReviewDetails  implements Mappable<GameReview.UserGameReview, ReviewDetails> {
+public class ReviewDetails implements Mappable<Review, ReviewDetails> {
     private String userId;
     private String username;
     private String firstName;
@@ -21,17 +21,11 @@ public class ReviewDetails  implements Mappable<GameReview.UserGameReview, Revie
     private String review;
     private LocalDate reviewDate;
     private LocalDate editDate;
+    private Long version;
 
     @Override
-    public ReviewDetails mapper(GameReview.@NonNull UserGameReview doc) {
-        this.userId = doc.getUserId();
-        this.username = doc.getUsername();
-        this.firstName = doc.getFirstName();
-        this.lastName = doc.getLastName();
-        this.rating = doc.getRating();
-        this.review = doc.getReview();
-        this.reviewDate = doc.getReviewDate();
-        this.editDate = doc.getEditDate();
+    public ReviewDetails mapper(@NonNull Review doc) {
+        DocumentMapper.INSTANCE.updateReviewDetails(doc, this);
         return this;
     }
 }
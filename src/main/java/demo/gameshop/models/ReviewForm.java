@@ -0,0 +1,22 @@
+package demo.gameshop.models;
+
+import demo.gameshop.documents.GameReview;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ReviewForm {
+	@Min(GameReview.MIN_RATING)
+	@Max(GameReview.MAX_RATING)
+	private int rating;
+
+	@Size(max = 2000)
+	private String review;
+
+	/** Version of the review being edited, empty when adding a review or to overwrite it */
+	private Long version;
+}
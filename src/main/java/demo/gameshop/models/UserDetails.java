@@ -4,8 +4,10 @@ import java.time.LocalDate;
 import java.util.Set;
 
 import demo.gameshop.documents.User;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.interfaces.models.Mappable;
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.Setter;
 
 @Getter
@@ -37,17 +39,8 @@ public class UserDetails implements Mappable<User, UserDetails> {
 	}
 	
 	@Override
-	public UserDetails mapper(User doc) {
-		this.id = doc.getId();
-		this.username = doc.getUsername();
-		this.email = doc.getEmail();
-		this.roles = doc.getRoles();
-		this.firstName = doc.getFirstName();
-		this.lastName = doc.getLastName();
-		this.dateOfBirth = doc.getDateOfBirth();
-		this.phoneNumber = doc.getPhoneNumber();
-		this.address = doc.getAddress();
-		this.disabled = doc.isDisabled();
+	public UserDetails mapper(@NonNull User doc) {
+		DocumentMapper.INSTANCE.updateUserDetails(doc, this);
 		return this;
 	}
 }
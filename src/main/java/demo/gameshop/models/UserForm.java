@@ -6,9 +6,11 @@ import java.util.Set;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import demo.gameshop.documents.User;
+import demo.gameshop.helpers.DocumentMapper;
 import demo.gameshop.interfaces.models.Mappable;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Past;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
@@ -48,20 +50,12 @@ public class UserForm implements Mappable<User, UserForm> {
     @Size(max = 255)
     private String address;
     
-    @NotBlank
+    @NotEmpty
     private Set<String> roles;
 
 	@Override
 	public UserForm mapper(@NonNull User doc) {
-		this.id = doc.getId();
-		this.username = doc.getUsername();
-		this.email = doc.getEmail();
-		this.firstName = doc.getFirstName();
-		this.lastName = doc.getLastName();
-		this.dateOfBirth = doc.getDateOfBirth();
-		this.phoneNumber = doc.getPhoneNumber();
-		this.address = doc.getAddress();
-		this.roles = doc.getRoles();
+		DocumentMapper.INSTANCE.updateUserForm(doc, this);
 		return this;
 	}
 }
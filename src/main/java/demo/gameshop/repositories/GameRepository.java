@@ -8,6 +8,6 @@ import org.springframework.stereotype.Repository;
 import demo.gameshop.documents.Game;
 
 @Repository
-public interface GameRepository extends MongoRepository<Game, String> {
+public interface GameRepository extends MongoRepository<Game, String>, GameRepositoryCustom {
 	Optional<Game> findByTitleNormalized(String titleNormalized);
 }
@@ -0,0 +1,17 @@
+package demo.gameshop.repositories;
+
+import java.util.stream.Stream;
+
+import demo.gameshop.documents.Game;
+
+/**
+ * Queries of {@link GameRepository} that cannot be derived from method names.
+ */
+public interface GameRepositoryCustom {
+	/**
+	 * Streams all the games with only the fields shown in listings, read from a cursor a batch at a time.
+	 * The stream must be closed once read, to close the cursor.
+	 * @return A stream of the games, in no particular order
+	 */
+	Stream<Game> streamAllForListing();
+}
@@ -0,0 +1,37 @@
+package demo.gameshop.repositories;
+
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import demo.gameshop.documents.Game;
+
+/**
+ * Implementation of {@link GameRepositoryCustom}, picked up by Spring Data by its name.
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.listing.batch-size} - Number of documents read from the cursor at a time</li>
+ * </ul>
+ */
+public class GameRepositoryCustomImpl implements GameRepositoryCustom {
+
+	private final MongoOperations mongoOperations;
+	private final int batchSize;
+
+	public GameRepositoryCustomImpl(
+			MongoOperations mongoOperations,
+			@Value("${gameshop.listing.batch-size:500}") int batchSize) {
+		this.mongoOperations = mongoOperations;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public Stream<Game> streamAllForListing() {
+		Query query = new Query().cursorBatchSize(batchSize);
+		query.fields().include("title", "titleNormalized", "genre", "imageUrl");
+		return mongoOperations.stream(query, Game.class);
+	}
+}
@@ -0,0 +1,14 @@
+package demo.gameshop.repositories;
+
+import java.util.Optional;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import demo.gameshop.documents.Review;
+
+@Repository
+public interface ReviewRepository extends MongoRepository<Review, String> {
+	Optional<Review> findByGameIdAndUserId(String gameId, String userId);
+	long countByGameId(String gameId);
+}
@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import demo.gameshop.documents.User;
 
 @Repository
-public interface UserRepository extends MongoRepository<User, String> {
+public interface UserRepository extends MongoRepository<User, String>, UserRepositoryCustom {
 	Optional<User> findByUsername(String username);
 	Optional<User> findByEmail(String email);
 }
@@ -0,0 +1,37 @@
+package demo.gameshop.repositories;
+
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import demo.gameshop.documents.User;
+
+/**
+ * Queries of {@link UserRepository} that cannot be derived from method names.
+ */
+public interface UserRepositoryCustom {
+	/**
+	 * Streams all the users with only the fields shown in listings (no password nor reviews),
+	 * read from a cursor a batch at a time.
+	 * The stream must be closed once read, to close the cursor.
+	 * @return A stream of the users, ordered by username
+	 */
+	Stream<User> streamAllForListing();
+
+	/**
+	 * Sets the password hash of a user, without reading nor overwriting its other fields.
+	 * @param username The username of the user
+	 * @param encodedPassword The new password hash
+	 * @return {@code true} if the user was found
+	 */
+	boolean updatePassword(String username, String encodedPassword);
+
+	/**
+	 * Adds a session to the revoked sessions of a user, and removes the ones that expired,
+	 * without reading nor overwriting its other fields.
+	 * @param username The username of the user
+	 * @param sessionId The id of the revoked session
+	 * @param expiresAt The time every cookie of the session expired by
+	 * @return {@code true} if the user was found
+	 */
+	boolean revokeSession(String username, String sessionId, Instant expiresAt);
+}
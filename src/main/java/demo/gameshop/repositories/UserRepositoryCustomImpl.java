@@ -0,0 +1,69 @@
+package demo.gameshop.repositories;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import demo.gameshop.documents.User;
+import demo.gameshop.documents.User.RevokedSession;
+
+/**
+ * Implementation of {@link UserRepositoryCustom}, picked up by Spring Data by its name.
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.listing.batch-size} - Number of documents read from the cursor at a time</li>
+ * </ul>
+ */
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+	private final MongoOperations mongoOperations;
+	private final int batchSize;
+
+	public UserRepositoryCustomImpl(
+			MongoOperations mongoOperations,
+			@Value("${gameshop.listing.batch-size:500}") int batchSize) {
+		this.mongoOperations = mongoOperations;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public Stream<User> streamAllForListing() {
+		Query query = new Query()
+				.with(Sort.by("username"))
+				.cursorBatchSize(batchSize);
+		query.fields().include("username", "email", "roles", "firstName", "lastName",
+				"dateOfBirth", "phoneNumber", "address", "disabled");
+		return mongoOperations.stream(query, User.class);
+	}
+
+	@Override
+	public boolean updatePassword(String username, String encodedPassword) {
+		return mongoOperations.updateFirst(
+				Query.query(Criteria.where("username").is(username)),
+				Update.update("password", encodedPassword),
+				User.class).getMatchedCount() > 0;
+	}
+
+	@Override
+	public boolean revokeSession(String username, String sessionId, Instant expiresAt) {
+		Query query = Query.query(Criteria.where("username").is(username));
+		// Two updates, as a field cannot be pulled from and pushed to at once
+		mongoOperations.updateFirst(
+				query,
+				new Update().pull("revokedSessions", new Document("expiresAt", new Document("$lte", Date.from(Instant.now())))),
+				User.class);
+		return mongoOperations.updateFirst(
+				query,
+				new Update().addToSet("revokedSessions", new RevokedSession(sessionId, expiresAt)),
+				User.class).getMatchedCount() > 0;
+	}
+}
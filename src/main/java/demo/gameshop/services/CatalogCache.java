@@ -0,0 +1,165 @@
+package demo.gameshop.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.repositories.GameRepository;
+
+/**
+ * Read-through in-memory cache of the game catalog shown in the storefront.
+ *
+ * <p>The whole catalog is kept as an immutable snapshot of {@link GameDetails}, sorted in the
+ * orders of the listings ({@link GameService.Order}) and indexed by normalized title, along with
+ * the genres of the games. It is loaded from MongoDB on the first read and reloaded
+ * once it is older than the configured TTL. Writers must call {@link #invalidate()} after
+ * changing a game so the next read loads the change; the TTL only bounds how long changes
+ * made by other instances of the application take to show up.</p>
+ *
+ * <p>The cached models are shared between requests and must not be modified.</p>
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.catalog-cache.ttl} - Time a snapshot is used for, {@code 0} disables the cache</li>
+ *   <li>{@code gameshop.catalog-cache.parallel-threshold} - Number of games from which they are mapped
+ *       to their models on all the cores when loading a snapshot</li>
+ * </ul>
+ */
+@Component
+public class CatalogCache {
+
+	private final GameRepository gameRepository;
+	private final long ttlNanos;
+	private final int parallelThreshold;
+
+	private volatile Snapshot snapshot;
+	/** Incremented on every invalidation, so a snapshot loaded while a game was changed is not kept */
+	private final AtomicLong generation = new AtomicLong();
+	/** Held while loading, so concurrent reads of an expired snapshot load it only once */
+	private final Lock loadLock = new ReentrantLock();
+
+	public CatalogCache(
+			GameRepository gameRepository,
+			@Value("${gameshop.catalog-cache.ttl:5m}") Duration ttl,
+			@Value("${gameshop.catalog-cache.parallel-threshold:" + DocumentMapper.DEFAULT_PARALLEL_THRESHOLD + "}") int parallelThreshold) {
+		this.gameRepository = gameRepository;
+		this.ttlNanos = ttl.toNanos();
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Gets all the games of the catalog.
+	 * @return An unmodifiable list of the games, in alphabetical order of their normalized titles
+	 */
+	public List<GameDetails> getGames() {
+		return getSnapshot().games();
+	}
+
+	/**
+	 * Gets all the games of the catalog, the newest first.
+	 * @return An unmodifiable list of the games, in descending order of their ids
+	 */
+	public List<GameDetails> getGamesNewestFirst() {
+		return getSnapshot().gamesNewestFirst();
+	}
+
+	/**
+	 * Gets all the genres of the games.
+	 * @return An unmodifiable list of the genres, in alphabetical order
+	 */
+	public List<String> getGenres() {
+		return getSnapshot().genres();
+	}
+
+	/**
+	 * Finds a game of the catalog by its normalized title.
+	 * @param titleNormalized The normalized title of the game
+	 * @return An {@link Optional} containing the game, or an empty {@code Optional} if it does not exist
+	 */
+	public Optional<GameDetails> findByTitleNormalized(String titleNormalized) {
+		if (!isEnabled()) return gameRepository.findByTitleNormalized(titleNormalized).map(DocumentMapper.INSTANCE::toGameDetails);
+		return Optional.ofNullable(getSnapshot().byTitleNormalized().get(titleNormalized));
+	}
+
+	/**
+	 * @return Whether the catalog is cached, lookups query MongoDB every time otherwise
+	 */
+	public boolean isEnabled() {
+		return ttlNanos > 0;
+	}
+
+	/**
+	 * Discards the cached catalog, so the next read loads it again.
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+		snapshot = null;
+	}
+
+	private Snapshot getSnapshot() {
+		// Only the whole catalog needs a snapshot when disabled, the lookups query the game they want
+		if (!isEnabled()) return load();
+		Snapshot current = snapshot;
+		if (current != null && System.nanoTime() - current.loadedAt() < ttlNanos) return current;
+		// Not synchronized, a virtual thread waiting for MongoDB in a synchronized block stays pinned to its carrier thread
+		loadLock.lock();
+		try {
+			// Another request may have loaded it while this one was waiting
+			current = snapshot;
+			if (current != null && System.nanoTime() - current.loadedAt() < ttlNanos) return current;
+			long loadedGeneration = generation.get();
+			current = load();
+			if (generation.get() == loadedGeneration) snapshot = current;
+			return current;
+		}
+		finally {
+			loadLock.unlock();
+		}
+	}
+
+	private Snapshot load() {
+		long loadedAt = System.nanoTime();
+		List<Game> documents = gameRepository.findAll();
+		// Split between all the cores for big catalogs
+		List<GameDetails> games = DocumentMapper.INSTANCE.toGameDetails(documents, parallelThreshold);
+		Map<String, GameDetails> byTitleNormalized = new HashMap<>(games.size() * 2);
+		Set<String> genres = new TreeSet<>();
+		for (GameDetails game : games) {
+			byTitleNormalized.put(game.getTitleNormalized(), game);
+			if (game.getGenre() != null) genres.add(game.getGenre());
+		}
+		// Same orders as the indexes the listings used to read (ids are hex strings of the same length)
+		List<GameDetails> byTitle = new ArrayList<>(games);
+		byTitle.sort(Comparator.comparing(GameDetails::getTitleNormalized));
+		List<GameDetails> newestFirst = new ArrayList<>(games);
+		newestFirst.sort(Comparator.comparing(GameDetails::getId).reversed());
+		return new Snapshot(
+				List.copyOf(byTitle),
+				List.copyOf(newestFirst),
+				List.copyOf(genres),
+				Map.copyOf(byTitleNormalized),
+				loadedAt);
+	}
+
+	private record Snapshot(
+			List<GameDetails> games,
+			List<GameDetails> gamesNewestFirst,
+			List<String> genres,
+			Map<String, GameDetails> byTitleNormalized,
+			long loadedAt) {}
+}
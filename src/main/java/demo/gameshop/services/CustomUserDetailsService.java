@@ -1,21 +1,77 @@
 package demo.gameshop.services;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import demo.gameshop.documents.User;
+import demo.gameshop.documents.User.RevokedSession;
+import demo.gameshop.helpers.CookieSecurityContextRepository.SessionRevocations;
 import demo.gameshop.repositories.UserRepository;
-import lombok.RequiredArgsConstructor;
+import lombok.NonNull;
 
+/**
+ * Loads the users to authenticate from MongoDB, keeping the loaded users in a bounded cache.
+ *
+ * <p>A user is cached under both its username and its email, so logging in with either of them
+ * after the first login does not query the database. The least recently used entries are
+ * dropped once the cache is full, and entries are reloaded once older than the configured TTL.
+ * Writers must call {@link #evict(User)} after changing the roles or the disabled flag of a user,
+ * or deleting it; the TTL only bounds how long changes made by other instances of the
+ * application take to be seen. Users that are not found are not cached, so a new user can log in right away.</p>
+ *
+ * <p>Also stores the new hash of a password when it is upgraded on login
+ * (see {@link #updatePassword(UserDetails, String)}), and the revoked sessions of the users,
+ * cached along with them (see {@link #revokeSession(String, String, Instant)}).</p>
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.user-cache.ttl} - Time a loaded user is used for, {@code 0} disables the cache</li>
+ *   <li>{@code gameshop.user-cache.max-size} - Maximum number of cache entries (two per user)</li>
+ * </ul>
+ */
 @Service
-@RequiredArgsConstructor
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService, SessionRevocations {
 
 	private final UserRepository userRepository;
+	private final long ttlNanos;
+	private final int maxSize;
+
+	/** Held while reading or changing the cache, never while querying the database */
+	private final Lock lock = new ReentrantLock();
+	/** Cached users by username and by email, least recently used first. Guarded by {@code lock}. */
+	private final Map<String, Entry> cache;
+	/** Incremented on every eviction, so a user loaded while it was changed is not cached */
+	private final AtomicLong generation = new AtomicLong();
+
+	public CustomUserDetailsService(
+			UserRepository userRepository,
+			@Value("${gameshop.user-cache.ttl:5m}") Duration ttl,
+			@Value("${gameshop.user-cache.max-size:10000}") int maxSize) {
+		this.userRepository = userRepository;
+		this.ttlNanos = ttl.toNanos();
+		this.maxSize = maxSize;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > CustomUserDetailsService.this.maxSize;
+			}
+		};
+	}
 
 	/**
 	 * {@inheritDoc}<br>
@@ -23,14 +79,133 @@ public class CustomUserDetailsService implements UserDetailsService {
 	 */
 	@Override
 	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+		Entry entry = getCached(username);
+		if (entry == null) entry = load(username);
+		if (entry == null) throw new UsernameNotFoundException("User not found with username: " + username);
+		return copy(entry.user());
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Read from the cached user, which is loaded if it is not cached.
+	 */
+	@Override
+	public boolean isSessionRevoked(String username, String sessionId) {
+		Entry entry = getCached(username);
+		if (entry == null) entry = load(username);
+		return entry != null && entry.revokedSessions().contains(sessionId);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Only the revoked sessions of the user are written, and the user is removed from the cache,
+	 * so the revocation applies at once on this instance, and within the TTL on the others.
+	 */
+	@Override
+	public void revokeSession(String username, String sessionId, Instant expiresAt) {
+		userRepository.revokeSession(username, sessionId, expiresAt);
+		evict(username);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Only the password of the user is written, so changes made meanwhile to the other fields are kept.
+	 */
+	@Override
+	public UserDetails updatePassword(UserDetails user, String newPassword) {
+		userRepository.updatePassword(user.getUsername(), newPassword);
+		evict(user.getUsername());
+		return org.springframework.security.core.userdetails.User.withUserDetails(user)
+				.password(newPassword)
+				.build();
+	}
+
+	/**
+	 * Removes a user from the cache, so it is loaded again on its next authentication.
+	 * Nothing happens if it is not cached.
+	 * @param user The changed or deleted user
+	 */
+	public void evict(@NonNull User user) {
+		lock.lock();
+		try {
+			generation.incrementAndGet();
+			cache.remove(user.getUsername());
+			if (user.getEmail() != null) cache.remove(user.getEmail());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Removes the entries of a user from the cache, found by its username */
+	private void evict(String username) {
+		lock.lock();
+		try {
+			generation.incrementAndGet();
+			Entry entry = cache.remove(username);
+			if (entry != null && entry.email() != null) cache.remove(entry.email());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Loads a user from the database, and caches it.
+	 * @return The entry of the user, or {@code null} if it is not found
+	 */
+	private Entry load(String username) {
+		long loadedGeneration = generation.get();
 		Optional<User> userOptional = username.contains("@")
 			? userRepository.findByEmail(username)
 			: userRepository.findByUsername(username);
-		if (userOptional.isPresent()) {
-			User user = userOptional.get();
-			return user.toUserDetails();
-		} else {
-			throw new UsernameNotFoundException("User not found with username: " + username);
+		if (userOptional.isEmpty()) return null;
+		User user = userOptional.get();
+		Set<String> revokedSessions = user.getRevokedSessions() == null ? Set.of() : user.getRevokedSessions().stream()
+				.map(RevokedSession::id)
+				.collect(Collectors.toUnmodifiableSet());
+		Entry entry = new Entry(user.toUserDetails(), user.getEmail(), revokedSessions, System.nanoTime());
+		put(user, entry, loadedGeneration);
+		return entry;
+	}
+
+	private Entry getCached(String key) {
+		if (ttlNanos <= 0) return null;
+		lock.lock();
+		try {
+			Entry entry = cache.get(key);
+			if (entry == null) return null;
+			if (System.nanoTime() - entry.loadedAt() < ttlNanos) return entry;
+			cache.remove(key);
+			return null;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void put(User user, Entry entry, long loadedGeneration) {
+		if (ttlNanos <= 0 || maxSize <= 0) return;
+		lock.lock();
+		try {
+			// Evicted while it was being loaded, what was read may already be outdated
+			if (generation.get() != loadedGeneration) return;
+			// Lookups by a key with an @ always search by email
+			if (!user.getUsername().contains("@")) cache.put(user.getUsername(), entry);
+			if (user.getEmail() != null) cache.put(user.getEmail(), entry);
+		}
+		finally {
+			lock.unlock();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Copies a cached user, as the authentication erases the password of the returned one
+	 * once it is checked.
+	 */
+	private static UserDetails copy(UserDetails userDetails) {
+		return org.springframework.security.core.userdetails.User.withUserDetails(userDetails).build();
+	}
+
+	private record Entry(UserDetails user, String email, Set<String> revokedSessions, long loadedAt) {}
+}
@@ -0,0 +1,239 @@
+package demo.gameshop.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import lombok.NonNull;
+
+/**
+ * Bounded local disk cache for files stored in MongoDB GridFS.
+ *
+ * <p>Each cached file keeps its {@link GridFSFile} metadata in memory and its contents
+ * in a file inside the cache directory, so a hit needs neither a metadata query nor a
+ * chunked GridFS read. Entries are weighted by their length and evicted in least recently
+ * used order once the configured byte budget is exceeded. Files bigger than the maximum
+ * file size are never cached.</p>
+ *
+ * <p>GridFS files are never modified in place, so entries only need to be removed
+ * when the file is deleted (see {@link #evict(String)}).</p>
+ *
+ * <p>The entries are guarded by a {@link ReentrantLock} rather than {@code synchronized}, as a virtual
+ * thread doing file I/O while holding a monitor stays pinned to its carrier thread. The files of the
+ * evicted entries are deleted while holding it, so a file cached again under the same id is never deleted.</p>
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.file-cache.directory} - Cache directory, a temporary directory is used if empty</li>
+ *   <li>{@code gameshop.file-cache.max-size} - Byte budget of the cache, {@code 0} disables it</li>
+ *   <li>{@code gameshop.file-cache.max-file-size} - Size of the biggest file that can be cached</li>
+ * </ul>
+ */
+@Component
+public class FileCache {
+
+	private static final Pattern CACHED_FILE_PATTERN = Pattern.compile("[0-9a-f]{24}(?:\\d*\\.tmp)?");
+
+	private final Path directory;
+	private final long maxSize;
+	private final long maxFileSize;
+
+	private final Lock lock = new ReentrantLock();
+	/** Access ordered, the eldest entry is the least recently used one. Guarded by {@code lock}. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** Sum of the lengths of all cached files. Guarded by {@code lock}. */
+	private long size;
+
+	public FileCache(
+			@Value("${gameshop.file-cache.directory:}") String directory,
+			@Value("${gameshop.file-cache.max-size:256MB}") DataSize maxSize,
+			@Value("${gameshop.file-cache.max-file-size:32MB}") DataSize maxFileSize) throws IOException {
+		this.directory = directory.isBlank()
+				? Files.createTempDirectory("gameshop-file-cache")
+				: Files.createDirectories(Path.of(directory));
+		this.maxSize = maxSize.toBytes();
+		this.maxFileSize = Math.min(maxFileSize.toBytes(), this.maxSize);
+		// Files left by a previous run are not indexed, remove them
+		// (only the ones named after a file ID, in case the directory is shared)
+		try (Stream<Path> stale = Files.list(this.directory)) {
+			for (Iterator<Path> it = stale.iterator(); it.hasNext();) {
+				Path path = it.next();
+				if (CACHED_FILE_PATTERN.matcher(path.getFileName().toString()).matches()) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a file is small enough to be cached.
+	 * @param gridFSFile The file to check
+	 * @return {@code true} if the file can be stored with {@link #put(GridFSFile, InputStream)}
+	 */
+	public boolean isCacheable(@NonNull GridFSFile gridFSFile) {
+		return maxSize > 0 && gridFSFile.getLength() <= maxFileSize;
+	}
+
+	/**
+	 * Gets the metadata of a cached file.
+	 * @param id The file ID stored in GridFS
+	 * @return An {@link Optional} containing the {@link GridFSFile} if cached, or an empty {@code Optional} if not
+	 */
+	public Optional<GridFSFile> getFile(String id) {
+		lock.lock();
+		try {
+			Entry entry = entries.get(id);
+			return entry != null ? Optional.of(entry.file()) : Optional.empty();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Opens a read only channel over the contents of a cached file.
+	 *
+	 * <p>The channel stays readable even if the entry is evicted while it is open.</p>
+	 *
+	 * @param id The file ID stored in GridFS
+	 * @return An {@link Optional} containing the opened {@link FileChannel} if cached, or an empty {@code Optional} if not
+	 * @throws IOException if the cached contents could not be opened
+	 */
+	public Optional<FileChannel> open(String id) throws IOException {
+		lock.lock();
+		try {
+			// Opened while holding the lock, so the file cannot be evicted and deleted before
+			Entry entry = entries.get(id);
+			return entry != null
+					? Optional.of(FileChannel.open(entry.path(), StandardOpenOption.READ))
+					: Optional.empty();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stores a file in the cache, evicting the least recently used files if needed.
+	 *
+	 * <p>The contents are fully read from {@code content} (but the stream is not closed).
+	 * If the file is already cached the existing entry is kept.</p>
+	 *
+	 * @param gridFSFile The metadata of the file
+	 * @param content The contents of the file
+	 * @return {@code true} if the file is cached after this call
+	 * @throws IOException if an I/O error occurs while writing the contents
+	 */
+	public boolean put(@NonNull GridFSFile gridFSFile, @NonNull InputStream content) throws IOException {
+		if (!isCacheable(gridFSFile)) return false;
+		String id = gridFSFile.getObjectId().toHexString();
+		// Write outside of the lock, only the rename and bookkeeping are done while holding it
+		Path temp = Files.createTempFile(directory, id, ".tmp");
+		long length;
+		try {
+			length = Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		lock.lock();
+		try {
+			if (entries.containsKey(id)) {
+				Files.deleteIfExists(temp);
+				return true;
+			}
+			Path path = directory.resolve(id);
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			entries.put(id, new Entry(gridFSFile, path, length));
+			size += length;
+			evictEldest();
+		}
+		finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a file from the cache. If the file is not cached, nothing happens.
+	 * @param id The file ID stored in GridFS
+	 */
+	public void evict(String id) {
+		lock.lock();
+		try {
+			Entry entry = entries.remove(id);
+			if (entry != null) remove(entry);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every file from the cache.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			entries.values().forEach(this::remove);
+			entries.clear();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The sum of the lengths of all cached files
+	 */
+	public long size() {
+		lock.lock();
+		try {
+			return size;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void evictEldest() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry entry = it.next().getValue();
+			it.remove();
+			remove(entry);
+		}
+	}
+
+	private void remove(Entry entry) {
+		size -= entry.length();
+		try {
+			Files.deleteIfExists(entry.path());
+		}
+		catch (IOException e) {
+			// Only leaves an unused file behind, it is removed on the next startup
+			e.printStackTrace();
+		}
+	}
+
+	private record Entry(GridFSFile file, Path path, long length) {}
+}
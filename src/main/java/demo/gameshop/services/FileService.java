@@ -2,11 +2,27 @@ package demo.gameshop.services;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.bson.Document;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.gridfs.GridFsOperations;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.stereotype.Service;
@@ -14,6 +30,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
+import com.mongodb.MongoGridFSException;
 import com.mongodb.client.gridfs.model.GridFSFile;
 
 import lombok.NonNull;
@@ -26,6 +43,9 @@ import lombok.RequiredArgsConstructor;
  * and obtain an {@link InputStream} for reading stored file data. 
  * The files are stored in MongoDB using {@link GridFsTemplate} and file data is obtained through {@link GridFsOperations}.</p>
  * 
+ * <p>Lookups by ID and file contents go through a {@link FileCache} first, so frequently
+ * requested files are served from the local disk instead of MongoDB.</p>
+ * 
  * <p><b>Example usage:</b></p>
  * 
  * <pre>{@code
@@ -45,14 +65,24 @@ import lombok.RequiredArgsConstructor;
  * 
  * // Get InputStream for file contents
  * InputStream stream = fileService.getInputStream(gridFSFile);
+ * 
+ * // Write the first KiB of the file contents
+ * fileService.copyRange(gridFSFile, 0, 1023, outputStream);
  * }</pre>
  */
 @Service
 @RequiredArgsConstructor
 public class FileService {
 	
+	/** Collection holding the GridFS file documents of the default bucket */
+	private static final String FILES_COLLECTION = "fs.files";
+	/** Collection holding the GridFS chunks of the default bucket */
+	private static final String CHUNKS_COLLECTION = "fs.chunks";
+	
 	private final GridFsTemplate template;
 	private final GridFsOperations operations;
+	private final MongoOperations mongoOperations;
+	private final FileCache cache;
 	
 	/**
 	 * Uploads a file to MongoDB GridFS.
@@ -67,13 +97,78 @@ public class FileService {
 	 * @throws IOException if an I/O error occurs while reading the file input stream
 	 */
 	public String addFile(MultipartFile upload, String fileName) throws IOException {
-        DBObject metadata = new BasicDBObject();
-        metadata.put("fileSize", upload.getSize());
-        ObjectId fileID = template.store(upload.getInputStream(), fileName, upload.getContentType(), metadata);
+		try (InputStream inputStream = upload.getInputStream()) {
+			return addFile(inputStream, upload.getSize(), fileName, upload.getContentType(), null);
+		}
+	}
+	
+	/**
+	 * Uploads the contents of a stream to MongoDB GridFS.
+	 *
+	 * <p>Same as {@link #addFile(MultipartFile, String)}, but allows storing extra metadata
+	 * along with the file size. The stream is read until its end but not closed.</p>
+	 *
+	 * @param content     The contents of the file
+	 * @param fileSize    The size of the contents in bytes
+	 * @param fileName    The name under which the file should be stored in GridFS
+	 * @param contentType The content type of the file
+	 * @param metadata    Extra metadata to store with the file, can be {@code null}
+	 * @return The generated file ID as a {@link String}
+	 */
+	public String addFile(InputStream content, long fileSize, String fileName, String contentType, DBObject metadata) {
+		if (metadata == null) metadata = new BasicDBObject();
+        metadata.put("fileSize", fileSize);
+        ObjectId fileID = template.store(content, fileName, contentType, metadata);
 
         return fileID.toHexString();
 	}
 	
+	/**
+	 * Uploads a stream of unknown size to MongoDB GridFS without buffering it.
+	 *
+	 * <p>The stream is piped into GridFS chunk by chunk while its size and SHA-256 hash
+	 * are computed. Once the upload completes, the {@code fileSize} and {@code sha256}
+	 * metadata are set on the stored file. If the stream is bigger than {@code maxSize}
+	 * the upload is aborted and nothing is stored.</p>
+	 *
+	 * @param content     The contents of the file, read until its end but not closed
+	 * @param fileName    The name under which the file should be stored in GridFS
+	 * @param contentType The content type of the file
+	 * @param maxSize     The maximum size of the file in bytes, negative for no limit
+	 * @return The generated file ID as a {@link String}
+	 * @throws IOException if the stream could not be read or is bigger than {@code maxSize}
+	 */
+	public String addFile(InputStream content, String fileName, String contentType, long maxSize) throws IOException {
+		MeasuredInputStream measured = new MeasuredInputStream(content, maxSize);
+		ObjectId fileID;
+		try {
+			fileID = template.store(measured, fileName, contentType, new BasicDBObject());
+		}
+		catch (MongoGridFSException e) {
+			// The upload was aborted by GridFS, report the cause of the read failure
+			if (e.getCause() instanceof IOException ioe) throw ioe;
+			throw e;
+		}
+		Document metadata = new Document("fileSize", measured.getSize())
+				.append("sha256", HexFormat.of().formatHex(measured.getDigest()));
+		updateMetadata(fileID.toHexString(), metadata);
+
+		return fileID.toHexString();
+	}
+	
+	/**
+	 * Sets metadata values on a stored file. Other metadata values are kept.
+	 *
+	 * @param id       The file ID stored in GridFS
+	 * @param metadata The metadata values to set
+	 */
+	public void updateMetadata(String id, @NonNull Map<String, ?> metadata) {
+		Update update = new Update();
+		metadata.forEach((key, value) -> update.set("metadata." + key, value));
+		mongoOperations.updateFirst(Query.query(Criteria.where("_id").is(new ObjectId(id))), update, FILES_COLLECTION);
+		cache.evict(id);
+	}
+	
 	/**
 	 * Deletes a file from GridFS using its unique identifier.
 	 * 
@@ -82,6 +177,7 @@ public class FileService {
 	 */
 	public void deleteFile(String id) {
 		template.delete(Query.query(Criteria.where("_id").is(id)));
+		cache.evict(id);
 	}
 	
 	/**
@@ -106,6 +202,8 @@ public class FileService {
 	 * @throws IOException if an error occurs during retrieval
 	 */
 	public Optional<GridFSFile> findById(String id) throws IOException {
+		Optional<GridFSFile> cached = cache.getFile(id);
+		if (cached.isPresent()) return cached;
         GridFSFile gridFSFile = template.findOne(Query.query(Criteria.where("_id").is(id)));
         return gridFSFile != null && gridFSFile.getMetadata() != null
         		? Optional.of(gridFSFile)
@@ -146,13 +244,161 @@ public class FileService {
 	 * <p>This method provides direct access to the binary data of a {@link GridFSFile}
 	 * retrieved from the database. It can be used for file download or content processing.</p>
 	 *
+	 * <p>If the file is small enough it is stored in the {@link FileCache} on the first read
+	 * and the returned stream reads from the cached copy.</p>
+	 *
 	 * @param gridFSFile A non-null {@link GridFSFile} representing the stored file
 	 * @return An {@link InputStream} for reading the file’s content
 	 * @throws IOException if the content stream could not be opened
 	 * @throws IllegalStateException if the underlying stream is atttempted to be read multiple times
 	 */
+	public InputStream getInputStream(@NonNull GridFSFile gridFSFile) throws IOException, IllegalStateException {
+		Optional<FileChannel> channel = openCached(gridFSFile);
+		return channel.isPresent()
+				? Channels.newInputStream(channel.get())
+				: operations.getResource(gridFSFile).getInputStream();
+	}
+	
+	/**
+	 * Writes a range of the contents of a stored file.
+	 *
+	 * <p>Cached files are written with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+	 * other files are read from GridFS one chunk at a time, starting from the chunk holding {@code start}.</p>
+	 *
+	 * @param gridFSFile A non-null {@link GridFSFile} representing the stored file
+	 * @param start The position of the first byte to write
+	 * @param end The position of the last byte to write (inclusive)
+	 * @param out The stream to write to, it is not closed
+	 * @throws IOException if the contents could not be read or written
+	 */
+	public void copyRange(@NonNull GridFSFile gridFSFile, long start, long end, @NonNull OutputStream out) throws IOException {
+		if (end < start) return;
+		Optional<FileChannel> cached = openCached(gridFSFile);
+		if (cached.isEmpty()) {
+			copyChunks(gridFSFile, start, end, out);
+			return;
+		}
+		try (FileChannel channel = cached.get()) {
+			WritableByteChannel target = Channels.newChannel(out);
+			long position = start;
+			long remaining = end - start + 1;
+			while (remaining > 0) {
+				long transferred = channel.transferTo(position, remaining, target);
+				if (transferred <= 0) break; // Reached the end of the file
+				position += transferred;
+				remaining -= transferred;
+			}
+		}
+	}
+	
+	/**
+	 * Writes a range of a file reading only the GridFS chunks it overlaps.
+	 *
+	 * <p>Reading through {@link #getInputStream(GridFSFile)} would download every chunk before
+	 * {@code start} only to skip it, which is most of the file for the last ranges of a big one.
+	 * Chunks are read from a cursor as they are written, so a slow client does not make the
+	 * whole range pile up in memory.</p>
+	 */
+	private void copyChunks(GridFSFile gridFSFile, long start, long end, OutputStream out) throws IOException {
+		int chunkSize = gridFSFile.getChunkSize();
+		int firstChunk = (int) (start / chunkSize);
+		int lastChunk = (int) (Math.min(end, gridFSFile.getLength() - 1) / chunkSize);
+		Query query = Query.query(Criteria.where("files_id").is(gridFSFile.getObjectId())
+						.and("n").gte(firstChunk).lte(lastChunk))
+				.with(Sort.by("n"));
+		// A couple of MiB per batch with the default chunk size of 255 KiB
+		query.cursorBatchSize(8);
+		try (Stream<Document> chunks = mongoOperations.stream(query, Document.class, CHUNKS_COLLECTION)) {
+			Iterator<Document> it = chunks.iterator();
+			long position = (long) firstChunk * chunkSize;
+			for (int n = firstChunk; n <= lastChunk; n++) {
+				Document chunk = it.hasNext() ? it.next() : null;
+				if (chunk == null || chunk.get("n", Number.class).intValue() != n) {
+					throw new IOException("Missing chunk " + n + " of file " + gridFSFile.getObjectId().toHexString());
+				}
+				byte[] data = chunk.get("data", Binary.class).getData();
+				int from = (int) Math.max(0, start - position);
+				int to = (int) Math.min(data.length, end - position + 1);
+				if (to > from) out.write(data, from, to - from);
+				position += data.length;
+			}
+		}
+	}
 
-	public InputStream getInputStream(@NonNull GridFSFile gridFSFile) throws IOException, IllegalStateException{
-		return operations.getResource(gridFSFile).getInputStream();
+	/**
+	 * Opens the cached contents of a file, caching them first if the file is small enough.
+	 * @return The opened channel, or an empty {@code Optional} if the file could not be cached
+	 */
+	private Optional<FileChannel> openCached(GridFSFile gridFSFile) throws IOException {
+		String id = gridFSFile.getObjectId().toHexString();
+		Optional<FileChannel> channel = cache.open(id);
+		if (channel.isPresent() || !cache.isCacheable(gridFSFile)) return channel;
+		try (InputStream inputStream = operations.getResource(gridFSFile).getInputStream()) {
+			cache.put(gridFSFile, inputStream);
+		}
+		// Can still be empty if it was evicted in the meantime
+		return cache.open(id);
+	}
+	
+	/**
+	 * Thrown when a file of unknown size is bigger than the maximum size while it is being stored.
+	 */
+	public static class FileTooLargeException extends IOException {
+		public FileTooLargeException(long maxSize) {
+			super("File exceeds the maximum size of " + maxSize + " bytes");
+		}
+	}
+	
+	/**
+	 * Stream that computes the size and SHA-256 hash of the data read through it,
+	 * failing once more than the maximum size has been read.
+	 */
+	private static class MeasuredInputStream extends DigestInputStream {
+		private final long maxSize;
+		private long size;
+		
+		MeasuredInputStream(InputStream in, long maxSize) {
+			super(in, newSha256());
+			this.maxSize = maxSize;
+		}
+		
+		private static MessageDigest newSha256() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e) {
+				// Every Java platform is required to support SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) count(1);
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) count(read);
+			return read;
+		}
+		
+		private void count(int read) throws IOException {
+			size += read;
+			if (maxSize >= 0 && size > maxSize) {
+				throw new FileTooLargeException(maxSize);
+			}
+		}
+		
+		long getSize() {
+			return size;
+		}
+		
+		byte[] getDigest() {
+			return getMessageDigest().digest();
+		}
 	}
 }
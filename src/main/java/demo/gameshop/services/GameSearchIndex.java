@@ -0,0 +1,389 @@
+package demo.gameshop.services;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.repositories.GameRepository;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory inverted index of the games, for searching them by title and genre.
+ *
+ * <p>Titles and genres are split into terms with the same normalization as the
+ * {@link Game#normalizeTitle(String) normalized titles} (so "Tést &amp; Game" has the
+ * terms {@code test}, {@code and} and {@code game}), and every term points to the games
+ * that have it. Each term is also indexed by its bigrams, which gives the candidates
+ * for matching misspelled terms without comparing the query against every term.</p>
+ *
+ * <p>Each term of the query is matched against the terms of the games with a score:</p>
+ * <ul>
+ *   <li>{@value #EXACT_SCORE} for the same term</li>
+ *   <li>{@value #PREFIX_SCORE} for a term starting with it, only for the last term of
+ *       the query as it may not be fully typed yet</li>
+ *   <li>{@value #FUZZY_SCORE} minus a penalty per edit for terms one edit away when it has
+ *       three or four characters, two edits away when it is longer</li>
+ * </ul>
+ * <p>Games are ranked by the sum of the best score of each term of the query, then
+ * by title. The index is loaded on the first search and then kept up to date by the
+ * writers of the games with {@link #put(Game)} and {@link #remove(String)}. It is also
+ * read again from MongoDB once older than the configured TTL, which bounds how long games
+ * changed by other instances of the application (or directly in the database) take to be
+ * found. The games are read again into a new index by a single search, while the others
+ * keep using the current one, which is only replaced once the new one is complete.</p>
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.search-index.ttl} - Time the index is used for before reading the games again,
+ *       {@code 0} never reads them again (only when a single instance changes the games)</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class GameSearchIndex {
+
+	static final double EXACT_SCORE = 3;
+	static final double PREFIX_SCORE = 2;
+	static final double FUZZY_SCORE = 1.5;
+	private static final double EDIT_PENALTY = 0.5;
+	/** Maximum number of terms a prefix expands to, the shortest ones are kept */
+	private static final int MAX_PREFIX_TERMS = 64;
+	/** Number of padded bigrams an edit changes at most (a transposition changes three) */
+	private static final int BIGRAMS_PER_EDIT = 3;
+
+	private final GameRepository gameRepository;
+	private final long ttlMillis;
+	private final Clock clock;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** The indexed games, {@code null} until loaded. Guarded by {@code lock}. */
+	private Index index;
+	/** Changes made while the games are read again, applied to the new index. Guarded by {@code lock}. */
+	private List<Consumer<Index>> pendingChanges;
+	/** Held while reading the games, so they are read by a single search at a time */
+	private final Lock reloadLock = new ReentrantLock();
+	private volatile boolean loaded;
+	/** {@link Clock#millis()} when the games were last read */
+	private volatile long loadedAt;
+
+	@Autowired
+	public GameSearchIndex(
+			GameRepository gameRepository,
+			@Value("${gameshop.search-index.ttl:5m}") Duration ttl) {
+		this(gameRepository, ttl, Clock.systemUTC());
+	}
+
+	/**
+	 * @param gameRepository Repository the games are read from
+	 * @param ttl Time the index is used for before reading the games again, {@code 0} never reads them again
+	 * @param clock The clock giving the current time
+	 */
+	public GameSearchIndex(@NonNull GameRepository gameRepository, @NonNull Duration ttl, @NonNull Clock clock) {
+		this.gameRepository = gameRepository;
+		this.ttlMillis = ttl.toMillis();
+		this.clock = clock;
+	}
+
+	/**
+	 * Searches the games matching a query, best matches first.
+	 *
+	 * @param query The text typed by the user
+	 * @param limit The maximum number of games to return
+	 * @return The matching games, empty if the query has no terms
+	 */
+	public List<GameDetails> search(String query, int limit) {
+		List<String> queryTerms = tokenize(query);
+		if (queryTerms.isEmpty() || limit <= 0) return List.of();
+		ensureLoaded();
+		lock.readLock().lock();
+		try {
+			Index current = index;
+			Map<String, Double> scores = new HashMap<>();
+			for (int i = 0; i < queryTerms.size(); i++) {
+				boolean isLast = i == queryTerms.size() - 1;
+				// Best score of this term of the query for each game
+				Map<String, Double> termScores = new HashMap<>();
+				current.matchTerms(queryTerms.get(i), isLast).forEach((term, score) -> {
+					for (String id : current.terms.get(term)) termScores.merge(id, score, Math::max);
+				});
+				termScores.forEach((id, score) -> scores.merge(id, score, Double::sum));
+			}
+			return scores.entrySet().stream()
+					.sorted(Map.Entry.<String, Double>comparingByValue().reversed()
+							.thenComparing(e -> current.entries.get(e.getKey()).game().getTitleNormalized()))
+					.limit(limit)
+					.map(e -> current.entries.get(e.getKey()).game())
+					.toList();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a game to the index, or updates it if it is already indexed.
+	 * @param game The saved game
+	 */
+	public void put(@NonNull Game game) {
+		GameDetails details = DocumentMapper.INSTANCE.toGameDetails(game);
+		change(index -> {
+			index.remove(details.getId());
+			index.add(details);
+		});
+	}
+
+	/**
+	 * Removes a game from the index. Nothing happens if it is not indexed.
+	 * @param id The id of the deleted game
+	 */
+	public void remove(String id) {
+		change(index -> index.remove(id));
+	}
+
+	/**
+	 * Reads all the games again, to pick up changes made by other instances of the application.
+	 * The games are read into a new index, the current one is used until then, and kept if they could not be read.
+	 */
+	public void reload() {
+		reloadLock.lock();
+		try {
+			Index reloaded = new Index();
+			long startedAt = clock.millis();
+			setPendingChanges(new ArrayList<>());
+			try {
+				try (Stream<Game> games = gameRepository.streamAllForListing()) {
+					DocumentMapper.INSTANCE.toGameDetails(games).forEach(reloaded::add);
+				}
+				lock.writeLock().lock();
+				try {
+					// Games changed while they were read may have been read before the change
+					pendingChanges.forEach(change -> change.accept(reloaded));
+					index = reloaded;
+					loadedAt = startedAt;
+					loaded = true;
+				}
+				finally {
+					lock.writeLock().unlock();
+				}
+			}
+			finally {
+				setPendingChanges(null);
+			}
+		}
+		finally {
+			reloadLock.unlock();
+		}
+	}
+
+	private boolean isCurrent() {
+		return loaded && (ttlMillis <= 0 || clock.millis() - loadedAt < ttlMillis);
+	}
+
+	private void ensureLoaded() {
+		if (isCurrent()) return;
+		if (loaded) {
+			// The other searches keep using the current index while one reads the games again
+			if (!reloadLock.tryLock()) return;
+		}
+		else {
+			reloadLock.lock();
+		}
+		try {
+			// Another search may have loaded it while this one was waiting
+			if (isCurrent()) return;
+			try {
+				reload();
+			}
+			catch (RuntimeException e) {
+				if (!loaded) throw e;
+				log.warn("Could not read the games again, searching the games read before", e);
+			}
+		}
+		finally {
+			reloadLock.unlock();
+		}
+	}
+
+	/**
+	 * Applies a change to the index, and to the index being read if the games are being read again.
+	 * Nothing happens if it is not loaded yet, the change will be read with the games.
+	 */
+	private void change(Consumer<Index> change) {
+		lock.writeLock().lock();
+		try {
+			if (index != null) change.accept(index);
+			if (pendingChanges != null) pendingChanges.add(change);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void setPendingChanges(List<Consumer<Index>> changes) {
+		lock.writeLock().lock();
+		try {
+			pendingChanges = changes;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Splits a text into the terms of its normalized title.
+	 */
+	static List<String> tokenize(String text) {
+		if (text == null) return List.of();
+		List<String> result = new ArrayList<>();
+		for (String term : Game.normalizeTitle(text).split("-")) {
+			if (!term.isEmpty()) result.add(term);
+		}
+		return result;
+	}
+
+	/** Bigrams of a term, padded so its first and last characters have their own */
+	private static Set<String> bigrams(String term) {
+		String padded = " " + term + " ";
+		Set<String> result = new HashSet<>();
+		for (int i = 0; i + 2 <= padded.length(); i++) result.add(padded.substring(i, i + 2));
+		return result;
+	}
+
+	/**
+	 * Optimal string alignment distance (Levenshtein distance counting the transposition
+	 * of two adjacent characters as one edit), stopping once it is above the maximum.
+	 * @return The distance, or {@code maxEdits + 1} if it is greater than {@code maxEdits}
+	 */
+	static int editDistance(String a, String b, int maxEdits) {
+		int[] previous2 = new int[b.length() + 1];
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) previous[j] = j;
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = current[0];
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				int distance = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+					distance = Math.min(distance, previous2[j - 2] + 1);
+				}
+				current[j] = distance;
+				rowMin = Math.min(rowMin, distance);
+			}
+			if (rowMin > maxEdits) return maxEdits + 1;
+			int[] recycled = previous2;
+			previous2 = previous;
+			previous = current;
+			current = recycled;
+		}
+		return Math.min(previous[b.length()], maxEdits + 1);
+	}
+
+	private record Entry(GameDetails game, Set<String> terms) {}
+
+	/** The indexed games, changed only while holding the write lock */
+	private static final class Index {
+		/** Indexed games by id */
+		final Map<String, Entry> entries = new HashMap<>();
+		/** Ids of the games per term, sorted to find the terms of a prefix */
+		final TreeMap<String, Set<String>> terms = new TreeMap<>();
+		/** Terms per bigram of the term */
+		final Map<String, Set<String>> bigrams = new HashMap<>();
+		/** Terms per length, for the short terms of the query whose bigrams may all be misspelled */
+		final Map<Integer, Set<String>> termsByLength = new HashMap<>();
+
+		/** Finds the indexed terms matching a term of the query, with their score. */
+		Map<String, Double> matchTerms(String queryTerm, boolean isPrefix) {
+			Map<String, Double> matches = new HashMap<>();
+			if (terms.containsKey(queryTerm)) matches.put(queryTerm, EXACT_SCORE);
+			if (isPrefix) {
+				SortedMap<String, Set<String>> prefixed = terms.subMap(queryTerm, queryTerm + Character.MAX_VALUE);
+				prefixed.keySet().stream()
+						.filter(term -> !term.equals(queryTerm))
+						.sorted(Comparator.comparingInt(String::length))
+						.limit(MAX_PREFIX_TERMS)
+						.forEach(term -> matches.put(term, PREFIX_SCORE));
+			}
+			int maxEdits = queryTerm.length() <= 2 ? 0 : queryTerm.length() <= 4 ? 1 : 2;
+			if (maxEdits == 0) return matches;
+			Set<String> candidates = new HashSet<>();
+			if (queryTerm.length() + 1 > BIGRAMS_PER_EDIT * maxEdits) {
+				// The edits leave at least one of the bigrams of the query, which the matching terms then have
+				for (String bigram : bigrams(queryTerm)) {
+					Set<String> withBigram = bigrams.get(bigram);
+					if (withBigram != null) candidates.addAll(withBigram);
+				}
+			}
+			else {
+				// The edits may change all the bigrams of the query, the terms of a close length are all compared
+				for (int length = queryTerm.length() - maxEdits; length <= queryTerm.length() + maxEdits; length++) {
+					Set<String> withLength = termsByLength.get(length);
+					if (withLength != null) candidates.addAll(withLength);
+				}
+			}
+			for (String term : candidates) {
+				if (matches.containsKey(term) || Math.abs(term.length() - queryTerm.length()) > maxEdits) continue;
+				int edits = editDistance(queryTerm, term, maxEdits);
+				if (edits <= maxEdits) matches.put(term, FUZZY_SCORE - EDIT_PENALTY * (edits - 1));
+			}
+			return matches;
+		}
+
+		void add(GameDetails game) {
+			Set<String> gameTerms = new LinkedHashSet<>(tokenize(game.getTitle()));
+			if (game.getGenre() != null) gameTerms.addAll(tokenize(game.getGenre()));
+			entries.put(game.getId(), new Entry(game, gameTerms));
+			for (String term : gameTerms) {
+				terms.computeIfAbsent(term, t -> {
+					for (String bigram : bigrams(t)) bigrams.computeIfAbsent(bigram, k -> new HashSet<>()).add(t);
+					termsByLength.computeIfAbsent(t.length(), k -> new HashSet<>()).add(t);
+					return new HashSet<>();
+				}).add(game.getId());
+			}
+		}
+
+		void remove(String id) {
+			Entry entry = entries.remove(id);
+			if (entry == null) return;
+			for (String term : entry.terms()) {
+				Set<String> ids = terms.get(term);
+				ids.remove(id);
+				if (!ids.isEmpty()) continue;
+				// No other game has the term
+				terms.remove(term);
+				for (String bigram : bigrams(term)) removeFrom(bigrams, bigram, term);
+				removeFrom(termsByLength, term.length(), term);
+			}
+		}
+
+		private static <K> void removeFrom(Map<K, Set<String>> map, K key, String term) {
+			Set<String> values = map.get(key);
+			values.remove(term);
+			if (values.isEmpty()) map.remove(key);
+		}
+	}
+}
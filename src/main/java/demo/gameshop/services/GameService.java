@@ -0,0 +1,155 @@
+package demo.gameshop.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.models.CursorPage;
+import demo.gameshop.models.GameDetails;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service for listing the games of the catalog a page at a time.
+ *
+ * <p>Pages are read with cursors. They are served from the sorted snapshot of the
+ * {@link CatalogCache}, starting with a binary search of the cursor. When the cache is disabled,
+ * every page is a range scan of one of the indexes of {@link Game} (with or without a genre)
+ * reading only the fields shown in the listings ({@link GameDetails}). Either way a page takes
+ * the same time no matter how deep it is, apart from skipping the games of other genres
+ * in the snapshot.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class GameService {
+
+	/** Order of the listed games */
+	public enum Order {
+		/** Alphabetical order of the normalized titles, which are unique */
+		TITLE(Sort.by(Direction.ASC, "titleNormalized")),
+		/** Newest games first, ids are generated in insertion order */
+		NEWEST(Sort.by(Direction.DESC, "id"));
+
+		private final Sort sort;
+
+		Order(Sort sort) {
+			this.sort = sort;
+		}
+	}
+
+	private final MongoOperations mongoOperations;
+	private final CatalogCache catalogCache;
+
+	/**
+	 * Gets the games that come after a cursor.
+	 *
+	 * @param genre  The genre of the games, or {@code null} for all the games
+	 * @param order  The order of the games
+	 * @param cursor The cursor of the last game already read (see {@link CursorPage#nextCursor()}),
+	 *               or {@code null} to start from the first game
+	 * @param count  The maximum number of games to return
+	 * @return The games, with the cursor of the next page if there are more after them.
+	 *         The games may be shared with the {@link CatalogCache} and must not be modified.
+	 * @throws IllegalArgumentException if the cursor is not valid for the order, or the count is not positive
+	 */
+	public CursorPage<GameDetails> getGames(String genre, @NonNull Order order, String cursor, int count) {
+		if (count < 1 || count == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid number of games: " + count);
+		}
+		if (order == Order.NEWEST && cursor != null) {
+			if (!ObjectId.isValid(cursor)) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+			// Same case as the ids it is compared to
+			cursor = new ObjectId(cursor).toHexString();
+		}
+		return catalogCache.isEnabled()
+				? getCachedGames(genre, order, cursor, count)
+				: queryGames(genre, order, cursor, count);
+	}
+
+	private CursorPage<GameDetails> getCachedGames(String genre, Order order, String cursor, int count) {
+		List<GameDetails> games = order == Order.TITLE ? catalogCache.getGames() : catalogCache.getGamesNewestFirst();
+		List<GameDetails> content = new ArrayList<>(Math.min(count, games.size()));
+		for (int i = cursor != null ? indexAfter(games, order, cursor) : 0; i < games.size(); i++) {
+			GameDetails game = games.get(i);
+			if (genre != null && !genre.equals(game.getGenre())) continue;
+			if (content.size() == count) {
+				return new CursorPage<>(content, getCursor(content.get(count - 1), order));
+			}
+			content.add(game);
+		}
+		return new CursorPage<>(content, null);
+	}
+
+	/**
+	 * @return The index of the first game that comes after the cursor in the order of the games
+	 */
+	private static int indexAfter(List<GameDetails> games, Order order, String cursor) {
+		int low = 0;
+		int high = games.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int comparison = getCursor(games.get(middle), order).compareTo(cursor);
+			boolean after = order == Order.TITLE ? comparison > 0 : comparison < 0;
+			if (after) high = middle;
+			else low = middle + 1;
+		}
+		return low;
+	}
+
+	private CursorPage<GameDetails> queryGames(String genre, Order order, String cursor, int count) {
+		Criteria criteria = new Criteria();
+		if (genre != null) criteria.and("genre").is(genre);
+		if (cursor != null) {
+			switch (order) {
+			case TITLE:
+				criteria.and("titleNormalized").gt(cursor);
+				break;
+			case NEWEST:
+				criteria.and("_id").lt(new ObjectId(cursor));
+				break;
+			}
+		}
+		// Read one more game to know if there is a next page
+		Query query = Query.query(criteria)
+				.with(order.sort)
+				.limit(count + 1);
+		query.fields().include("title", "titleNormalized", "genre", "imageUrl");
+		List<GameDetails> games = DocumentMapper.INSTANCE.toGameDetails(mongoOperations.find(query, Game.class));
+		if (games.size() <= count) return new CursorPage<>(games, null);
+		List<GameDetails> content = games.subList(0, count);
+		return new CursorPage<>(content, getCursor(content.get(count - 1), order));
+	}
+
+	/**
+	 * Gets all the genres of the games, in alphabetical order.
+	 */
+	public List<String> getGenres() {
+		if (catalogCache.isEnabled()) return catalogCache.getGenres();
+		return mongoOperations.findDistinct(new Query(), "genre", Game.class, String.class).stream()
+				.sorted()
+				.toList();
+	}
+
+	/**
+	 * Gets the cursor to read the games that come after a game.
+	 *
+	 * @param game  The last game that was read
+	 * @param order The order the game was read in
+	 * @return The cursor, to pass to {@link #getGames(String, Order, String, int)}
+	 */
+	public static String getCursor(@NonNull GameDetails game, @NonNull Order order) {
+		return switch (order) {
+			case TITLE -> game.getTitleNormalized();
+			case NEWEST -> game.getId();
+		};
+	}
+}
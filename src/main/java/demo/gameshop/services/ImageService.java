@@ -0,0 +1,339 @@
+package demo.gameshop.services;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service for storing images along with smaller resized variants of them.
+ *
+ * <p>When an image is added, a variant is generated for each width in {@link #VARIANT_WIDTHS}
+ * that is smaller than the original image. The variants are stored as separate GridFS files
+ * and linked from the metadata of the original file (under {@code variants}). The links
+ * keep what is needed to serve the variant (id, length, chunk size, upload date and content type),
+ * so picking a variant does not need any extra query. Variants linked before those fields were
+ * stored are still looked up by id.</p>
+ *
+ * <p>Opaque images are encoded as JPEG and images with transparency as PNG, using the
+ * encoders bundled with the JDK ({@link ImageIO}). Images in a format that is recognized but
+ * not supported are stored without variants. Streamed uploads that are not images at all are
+ * rejected with an {@link InvalidImageException}.</p>
+ *
+ * <p><b>Example usage:</b></p>
+ *
+ * <pre>{@code
+ * // Upload an image and its variants
+ * String imageId = imageService.addImage(uploadedFile, "test-game.jpg");
+ *
+ * // Get the best file to display the image 300 pixels wide
+ * GridFSFile original = fileService.findById(imageId).get();
+ * GridFSFile card = imageService.findVariant(original, 300).orElse(original);
+ *
+ * // Delete the image and its variants
+ * imageService.deleteImage(imageId);
+ * }</pre>
+ */
+@Service
+@RequiredArgsConstructor
+public class ImageService {
+
+	/** Widths of the generated variants (thumbnail, card and detail) */
+	public static final int[] VARIANT_WIDTHS = { 160, 480, 1024 };
+
+	private static final float JPEG_QUALITY = 0.85f;
+
+	private final FileService fileService;
+
+	/**
+	 * Uploads an image to MongoDB GridFS along with its resized variants.
+	 *
+	 * @param upload   The {@link MultipartFile} to be uploaded
+	 * @param fileName The name under which the image should be stored in GridFS
+	 * @return The generated file ID of the original image as a {@link String}
+	 * @throws IOException if an I/O error occurs while reading the file input stream
+	 */
+	public String addImage(MultipartFile upload, String fileName) throws IOException {
+		DBObject metadata = new BasicDBObject();
+		List<DBObject> variants;
+		try (InputStream inputStream = upload.getInputStream()) {
+			variants = addVariants(inputStream, fileName);
+		}
+		catch (InvalidImageException e) {
+			// Stored anyway, as the uploaded files were before being checked
+			variants = null;
+		}
+		if (variants != null) metadata.put("variants", variants);
+		try (InputStream inputStream = upload.getInputStream()) {
+			return fileService.addFile(inputStream, upload.getSize(), fileName, upload.getContentType(), metadata);
+		}
+	}
+
+	/**
+	 * Uploads an image of unknown size to MongoDB GridFS without buffering it, then adds its resized variants.
+	 *
+	 * <p>The variants are generated by reading the stored image back once the upload completes.</p>
+	 *
+	 * @param content     The contents of the image, read until its end but not closed
+	 * @param fileName    The name under which the image should be stored in GridFS
+	 * @param contentType The content type of the image
+	 * @param maxSize     The maximum size of the image in bytes, negative for no limit
+	 * @return The generated file ID of the original image as a {@link String}
+	 * @throws IOException if the stream could not be read
+	 * @throws FileService.FileTooLargeException if the stream is bigger than {@code maxSize}
+	 * @throws InvalidImageException if the stream is not an image in a format that can be read,
+	 *         nothing is stored then
+	 * @see FileService#addFile(InputStream, String, String, long)
+	 */
+	public String addImage(InputStream content, String fileName, String contentType, long maxSize) throws IOException {
+		String id = fileService.addFile(content, fileName, contentType, maxSize);
+		try {
+			Optional<GridFSFile> original = fileService.findById(id);
+			if (original.isEmpty()) return id;
+			List<DBObject> variants;
+			try (InputStream inputStream = fileService.getInputStream(original.get())) {
+				variants = addVariants(inputStream, fileName);
+			}
+			if (variants != null) fileService.updateMetadata(id, Map.of("variants", variants));
+		}
+		catch (IOException | RuntimeException e) {
+			deleteImage(id);
+			throw e;
+		}
+		return id;
+	}
+
+	/**
+	 * Deletes an image and its variants from GridFS.
+	 *
+	 * <p>If no image with the given ID exists, nothing happens.</p>
+	 * @param id The file ID of the original image
+	 * @throws IOException if an error occurs while retrieving the image
+	 */
+	public void deleteImage(String id) throws IOException {
+		Optional<GridFSFile> fileOptional = fileService.findById(id);
+		if (fileOptional.isPresent()) {
+			for (Document variant : getVariants(fileOptional.get())) {
+				fileService.deleteFile(variant.getString("id"));
+			}
+		}
+		fileService.deleteFile(id);
+	}
+
+	/**
+	 * Finds the smallest variant of an image that is at least as wide as the requested width.
+	 *
+	 * @param original The original image file
+	 * @param width    The width the image will be displayed at
+	 * @return An {@link Optional} containing the variant, or an empty {@code Optional}
+	 * if the original image should be used instead
+	 * @throws IOException if an error occurs while retrieving the variant
+	 */
+	public Optional<GridFSFile> findVariant(@NonNull GridFSFile original, int width) throws IOException {
+		Document best = null;
+		for (Document variant : getVariants(original)) {
+			int variantWidth = variant.getInteger("width");
+			if (variantWidth >= width && (best == null || variantWidth < best.getInteger("width"))) {
+				best = variant;
+			}
+		}
+		if (best == null) return Optional.empty();
+		if (!best.containsKey("length") || !best.containsKey("chunkSize") || !best.containsKey("uploadDate")) {
+			// Linked before the file fields were kept in the link
+			return fileService.findById(best.getString("id"));
+		}
+		Document metadata = new Document("_contentType", best.getString("contentType"))
+				.append("fileSize", best.get("length", Number.class).longValue())
+				.append("width", best.getInteger("width"));
+		return Optional.of(new GridFSFile(
+				new BsonObjectId(new ObjectId(best.getString("id"))),
+				best.getString("filename"),
+				best.get("length", Number.class).longValue(),
+				best.get("chunkSize", Number.class).intValue(),
+				best.getDate("uploadDate"),
+				metadata));
+	}
+
+	private static List<Document> getVariants(GridFSFile file) {
+		Document metadata = file.getMetadata();
+		if (metadata == null || !metadata.containsKey("variants")) return List.of();
+		return metadata.getList("variants", Document.class);
+	}
+
+	/**
+	 * Stores a resized variant of the image for each of {@link #VARIANT_WIDTHS} that is smaller than the image.
+	 * If storing any of them fails, the already stored variants are deleted.
+	 * @return The links to store in the metadata of the original image, or {@code null} if the image is
+	 * in a format that is recognized but not supported
+	 * @throws InvalidImageException if the stream is not an image in a format that is recognized
+	 */
+	private List<DBObject> addVariants(InputStream inputStream, String fileName) throws IOException {
+		BufferedImage image;
+		try {
+			image = readImage(inputStream);
+		}
+		catch (IIOException e) {
+			// Unsupported image (for example a CMYK JPEG), store it without variants
+			return null;
+		}
+		if (image == null) throw new InvalidImageException();
+
+		boolean hasAlpha = image.getColorModel().hasAlpha();
+		String format = hasAlpha ? "png" : "jpeg";
+		String contentType = hasAlpha ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE;
+		int extensionIdx = fileName.lastIndexOf('.');
+		String baseName = extensionIdx == -1 ? fileName : fileName.substring(0, extensionIdx);
+
+		List<DBObject> variants = new ArrayList<>();
+		try {
+			BufferedImage source = image;
+			// Go from the biggest to the smallest width so each variant is resized from the previous one
+			for (int i = VARIANT_WIDTHS.length - 1; i >= 0; i--) {
+				int width = VARIANT_WIDTHS[i];
+				if (width >= image.getWidth()) continue;
+				source = resize(source, width, hasAlpha);
+				byte[] bytes = encode(source, format);
+				DBObject metadata = new BasicDBObject("width", width);
+				String variantName = baseName + "-" + width + "w." + format;
+				String id = fileService.addFile(
+						new ByteArrayInputStream(bytes),
+						bytes.length,
+						variantName,
+						contentType,
+						metadata);
+				DBObject variant = new BasicDBObject("width", width);
+				variant.put("id", id);
+				variants.add(variant);
+				// Read back once what GridFS set on the file, so it can be served from the link
+				GridFSFile stored = fileService.findById(id)
+						.orElseThrow(() -> new IOException("Variant " + variantName + " was not stored"));
+				variant.put("filename", variantName);
+				variant.put("contentType", contentType);
+				variant.put("length", stored.getLength());
+				variant.put("chunkSize", stored.getChunkSize());
+				variant.put("uploadDate", stored.getUploadDate());
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			// Do not leave orphan variants behind
+			variants.forEach(variant -> fileService.deleteFile((String) variant.get("id")));
+			throw e;
+		}
+		return variants;
+	}
+
+	/**
+	 * Decodes an image, subsampling it while reading if it is much bigger than the biggest variant.
+	 * @return The decoded image, or {@code null} if there is no decoder for it
+	 */
+	private static BufferedImage readImage(InputStream inputStream) throws IOException {
+		try (ImageInputStream imageStream = ImageIO.createImageInputStream(inputStream)) {
+			if (imageStream == null) return null;
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+			if (!readers.hasNext()) return null;
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(imageStream, true, true);
+				// Keep at least twice the biggest variant width for a good downscaling quality
+				int maxWidth = VARIANT_WIDTHS[VARIANT_WIDTHS.length - 1] * 2;
+				int subsampling = Math.max(1, reader.getWidth(0) / maxWidth);
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Resizes an image to the given width keeping its aspect ratio.
+	 *
+	 * <p>Halves the image with bilinear interpolation until it is close to the target width,
+	 * which gives results close to bicubic filtering at a much lower cost.</p>
+	 */
+	private static BufferedImage resize(BufferedImage image, int width, boolean hasAlpha) {
+		int type = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage result = image;
+		int currentWidth = image.getWidth();
+		int currentHeight = image.getHeight();
+		do {
+			int nextWidth = Math.max(width, currentWidth / 2);
+			int nextHeight = Math.max(1, (int) Math.round((double) image.getHeight() * nextWidth / image.getWidth()));
+			BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+			Graphics2D graphics = next.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(result, 0, 0, nextWidth, nextHeight, 0, 0, currentWidth, currentHeight, null);
+			}
+			finally {
+				graphics.dispose();
+			}
+			result = next;
+			currentWidth = nextWidth;
+			currentHeight = nextHeight;
+		} while (currentWidth > width);
+		return result;
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(bytes)) {
+			writer.setOutput(outputStream);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (param.canWriteCompressed() && "jpeg".equals(format)) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(JPEG_QUALITY);
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Thrown when an uploaded file is not an image in a format that can be read.
+	 */
+	public static class InvalidImageException extends IOException {
+		public InvalidImageException() {
+			super("The file is not an image in a supported format");
+		}
+	}
+}
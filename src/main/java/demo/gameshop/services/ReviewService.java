@@ -0,0 +1,351 @@
+package demo.gameshop.services;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import demo.gameshop.documents.GameReview;
+import demo.gameshop.documents.Review;
+import demo.gameshop.documents.User;
+import demo.gameshop.models.CursorPage;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service for reading and writing the {@link Review} documents of a game.
+ *
+ * <p>Every write is a targeted update of the documents involved (the review, the rating
+ * aggregates of the game's {@link GameReview} and the reviews of the {@link User}),
+ * so concurrent reviews of the same game never overwrite each other. Edits can be
+ * checked against the version of the review that was read.</p>
+ *
+ * <p>Reviews are always returned from the newest to the oldest, which is the order
+ * of the {@code game_date} index, so only the requested reviews are read.
+ * Prefer paging with cursors ({@link #getReviewsAfter(String, String, int)}) over offsets,
+ * as skipping reviews still has to walk the index up to the offset.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class ReviewService {
+
+	/** Newest reviews first, the id breaks ties between reviews of the same day */
+	private static final Sort NEWEST_FIRST = Sort.by(Direction.DESC, "reviewDate", "id");
+
+	private final MongoOperations mongoOperations;
+
+	/**
+	 * Gets a page of the reviews of a game.
+	 *
+	 * @param gameId The id of the game
+	 * @param offset The number of reviews to skip
+	 * @param count  The maximum number of reviews to return
+	 * @return The reviews, with the cursor of the next page if there are more after them
+	 * @throws IllegalArgumentException if the offset is negative or the count is not positive
+	 */
+	public CursorPage<Review> getReviews(String gameId, int offset, int count) {
+		if (offset < 0) throw new IllegalArgumentException("Offset must not be negative: " + offset);
+		checkCount(count);
+		// Read one more review to know if there is a next page
+		Query query = Query.query(Criteria.where("gameId").is(gameId))
+				.with(NEWEST_FIRST)
+				.skip(offset)
+				.limit(count + 1);
+		return toPage(mongoOperations.find(query, Review.class), count);
+	}
+
+	/**
+	 * Gets the reviews of a game that come after a cursor.
+	 *
+	 * <p>Unlike {@link #getReviews(String, int, int)} this answers with an index range scan,
+	 * so it takes the same time for every page, and reviews added in the meantime do not
+	 * shift the following pages.</p>
+	 *
+	 * @param gameId The id of the game
+	 * @param cursor The cursor of the last review already read (see {@link #getCursor(Review)}),
+	 *               or {@code null} to start from the newest review
+	 * @param count  The maximum number of reviews to return
+	 * @return The reviews, with the cursor of the next page if there are more after them
+	 * @throws IllegalArgumentException if the cursor is not valid or the count is not positive
+	 */
+	public CursorPage<Review> getReviewsAfter(String gameId, String cursor, int count) {
+		checkCount(count);
+		Criteria criteria = Criteria.where("gameId").is(gameId);
+		if (cursor != null) {
+			Cursor position = decodeCursor(cursor);
+			criteria.orOperator(
+					Criteria.where("reviewDate").lt(position.reviewDate()),
+					Criteria.where("reviewDate").is(position.reviewDate()).and("_id").lt(position.id()));
+		}
+		// Read one more review to know if there is a next page
+		Query query = Query.query(criteria)
+				.with(NEWEST_FIRST)
+				.limit(count + 1);
+		return toPage(mongoOperations.find(query, Review.class), count);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the count is not positive, or too big to read one more review
+	 */
+	private static void checkCount(int count) {
+		if (count < 1 || count == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid number of reviews: " + count);
+		}
+	}
+
+	/**
+	 * @param reviews The reviews read, one more than {@code count} if there is a next page
+	 */
+	private static CursorPage<Review> toPage(List<Review> reviews, int count) {
+		if (reviews.size() <= count) return new CursorPage<>(reviews, null);
+		List<Review> content = reviews.subList(0, count);
+		return new CursorPage<>(content, getCursor(content.get(count - 1)));
+	}
+
+	/**
+	 * Adds the review of a game by a user, or edits it if the user already reviewed the game.
+	 *
+	 * @param gameId The id of the game
+	 * @param user   The user reviewing the game
+	 * @param rating The rating, from {@link GameReview#MIN_RATING} to {@link GameReview#MAX_RATING}
+	 * @param text   The text of the review
+	 * @param expectedVersion The version of the review the user edited, or {@code null} to overwrite any version
+	 * @throws IllegalArgumentException if the rating is out of range
+	 * @throws OptimisticLockingFailureException if the review is no longer at the expected version
+	 */
+	public void saveReview(String gameId, @NonNull User user, int rating, String text, Long expectedVersion) {
+		checkRating(rating);
+		if (expectedVersion == null) {
+			try {
+				addReview(gameId, user, rating, text);
+				return;
+			}
+			catch (DuplicateKeyException e) {
+				// Already reviewed, edit the existing review instead
+			}
+		}
+		if (editReview(gameId, user.getId(), rating, text, expectedVersion).isEmpty()) {
+			// Removed since it was read
+			throw new OptimisticLockingFailureException("Review of game " + gameId + " by user " + user.getId() + " no longer exists");
+		}
+	}
+
+	/**
+	 * Adds the review of a game by a user and updates the rating of the game and the reviews of the user.
+	 *
+	 * <p>The unique index on the game and user makes concurrent reviews by the same user fail
+	 * instead of overwriting each other.</p>
+	 *
+	 * @param gameId The id of the game
+	 * @param user   The user reviewing the game
+	 * @param rating The rating, from {@link GameReview#MIN_RATING} to {@link GameReview#MAX_RATING}
+	 * @param text   The text of the review
+	 * @return The added review
+	 * @throws IllegalArgumentException if the rating is out of range
+	 * @throws DuplicateKeyException if the user already reviewed the game
+	 */
+	public Review addReview(String gameId, @NonNull User user, int rating, String text) {
+		checkRating(rating);
+		Review review = mongoOperations.insert(new Review(gameId, user, rating, text));
+		updateRating(gameId, null, rating);
+		mongoOperations.updateFirst(
+				Query.query(Criteria.where("id").is(user.getId())),
+				new Update().addToSet("reviews", gameId),
+				User.class);
+		return review;
+	}
+
+	/**
+	 * Edits the review of a game by a user and updates the rating of the game.
+	 *
+	 * @param gameId The id of the game
+	 * @param userId The id of the user that reviewed the game
+	 * @param rating The new rating, from {@link GameReview#MIN_RATING} to {@link GameReview#MAX_RATING}
+	 * @param text   The new text of the review
+	 * @return The review before being edited, or an empty {@code Optional} if the user did not review the game
+	 * @throws IllegalArgumentException if the rating is out of range
+	 */
+	public Optional<Review> editReview(String gameId, String userId, int rating, String text) {
+		return editReview(gameId, userId, rating, text, null);
+	}
+
+	/**
+	 * Edits the review of a game by a user if it is still at the expected version,
+	 * and updates the rating of the game.
+	 *
+	 * @param gameId The id of the game
+	 * @param userId The id of the user that reviewed the game
+	 * @param rating The new rating, from {@link GameReview#MIN_RATING} to {@link GameReview#MAX_RATING}
+	 * @param text   The new text of the review
+	 * @param expectedVersion The version of the review that was edited, or {@code null} to overwrite any version
+	 * @return The review before being edited, or an empty {@code Optional} if the user did not review the game
+	 * @throws IllegalArgumentException if the rating is out of range
+	 * @throws OptimisticLockingFailureException if the review is no longer at the expected version
+	 */
+	public Optional<Review> editReview(String gameId, String userId, int rating, String text, Long expectedVersion) {
+		checkRating(rating);
+		Query query = byGameAndUser(gameId, userId);
+		if (expectedVersion != null) {
+			// Reviews written before versioning have no version, consider it as the first one
+			query.addCriteria(expectedVersion == 0
+					? Criteria.where("version").in(0L, null)
+					: Criteria.where("version").is(expectedVersion));
+		}
+		Update update = new Update()
+				.set("rating", rating)
+				.set("review", text)
+				.set("editDate", LocalDate.now())
+				.inc("version", 1);
+		// Returns the review as it was before the update, with the rating to replace
+		Review previous = mongoOperations.findAndModify(query, update, Review.class);
+		if (previous == null) {
+			if (expectedVersion != null && mongoOperations.exists(byGameAndUser(gameId, userId), Review.class)) {
+				throw new OptimisticLockingFailureException("Review of game " + gameId + " by user " + userId
+						+ " is no longer at version " + expectedVersion);
+			}
+			return Optional.empty();
+		}
+		updateRating(gameId, previous.getRating(), rating);
+		return Optional.of(previous);
+	}
+
+	/**
+	 * Removes the review of a game by a user and updates the rating of the game and the reviews of the user.
+	 *
+	 * @param gameId The id of the game
+	 * @param userId The id of the user that reviewed the game
+	 * @return The removed review, or an empty {@code Optional} if the user did not review the game
+	 */
+	public Optional<Review> removeReview(String gameId, String userId) {
+		Review removed = mongoOperations.findAndRemove(byGameAndUser(gameId, userId), Review.class);
+		if (removed == null) return Optional.empty();
+		updateRating(gameId, removed.getRating(), null);
+		mongoOperations.updateFirst(
+				Query.query(Criteria.where("id").is(userId)),
+				new Update().pull("reviews", gameId),
+				User.class);
+		return Optional.of(removed);
+	}
+
+	/**
+	 * Gets the rating aggregates of a game without writing anything.
+	 *
+	 * <p>The {@link GameReview} of a game is only created by the first review written
+	 * through this service, so a game without one simply has no reviews yet.</p>
+	 *
+	 * @param gameId The id of the game
+	 * @return The stored aggregates, or empty aggregates if the game has not been reviewed
+	 */
+	public GameReview getRating(String gameId) {
+		GameReview gameReview = mongoOperations.findById(gameId, GameReview.class);
+		return gameReview != null ? gameReview : new GameReview(gameId);
+	}
+
+	/**
+	 * Recomputes the rating aggregates of a game from all of its reviews.
+	 *
+	 * <p>Only needed when the reviews were written without going through this service
+	 * (for example when migrating them), as the aggregates are otherwise always up to date.</p>
+	 *
+	 * @param gameId The id of the game
+	 */
+	public void recomputeRating(String gameId) {
+		Aggregation aggregation = Aggregation.newAggregation(
+				Aggregation.match(Criteria.where("gameId").is(gameId)),
+				Aggregation.group("rating").count().as("count"));
+		long count = 0;
+		long sum = 0;
+		Map<String, Long> histogram = new HashMap<>();
+		for (Document group : mongoOperations.aggregate(aggregation, Review.class, Document.class)) {
+			int rating = ((Number) group.get("_id")).intValue();
+			long ratingCount = ((Number) group.get("count")).longValue();
+			count += ratingCount;
+			sum += rating * ratingCount;
+			histogram.put(Integer.toString(rating), ratingCount);
+		}
+		Update update = new Update()
+				.set("ratingCount", count)
+				.set("ratingSum", sum)
+				.set("ratingHistogram", histogram);
+		mongoOperations.upsert(Query.query(Criteria.where("id").is(gameId)), update, GameReview.class);
+	}
+
+	/**
+	 * Atomically applies a rating change to the aggregates of a game.
+	 * @param removed The rating that was removed, or {@code null} if a review was added
+	 * @param added   The rating that was added, or {@code null} if a review was removed
+	 */
+	private void updateRating(String gameId, Integer removed, Integer added) {
+		// A key can only be updated once per update, so apply the net changes
+		int countDelta = (added != null ? 1 : 0) - (removed != null ? 1 : 0);
+		int sumDelta = (added != null ? added : 0) - (removed != null ? removed : 0);
+		Update update = new Update()
+				.inc("ratingCount", countDelta)
+				.inc("ratingSum", sumDelta);
+		if (!Objects.equals(removed, added)) {
+			if (removed != null) update.inc("ratingHistogram." + removed, -1);
+			if (added != null) update.inc("ratingHistogram." + added, 1);
+		}
+		mongoOperations.upsert(Query.query(Criteria.where("id").is(gameId)), update, GameReview.class);
+	}
+
+	private static void checkRating(int rating) {
+		if (rating < GameReview.MIN_RATING || rating > GameReview.MAX_RATING) {
+			throw new IllegalArgumentException("Rating must be between "
+					+ GameReview.MIN_RATING + " and " + GameReview.MAX_RATING + ": " + rating);
+		}
+	}
+
+	private static Query byGameAndUser(String gameId, String userId) {
+		return Query.query(Criteria.where("gameId").is(gameId).and("userId").is(userId));
+	}
+
+	/**
+	 * Gets the opaque cursor pointing after a review, to be used with {@link #getReviewsAfter(String, String, int)}.
+	 * @param review The last review read
+	 * @return The cursor
+	 */
+	public static String getCursor(@NonNull Review review) {
+		String position = review.getReviewDate().toEpochDay() + ":" + review.getId();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the cursor is not valid
+	 */
+	private static Cursor decodeCursor(String cursor) {
+		String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+		int separatorIdx = position.indexOf(':');
+		if (separatorIdx == -1) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		try {
+			return new Cursor(
+					LocalDate.ofEpochDay(Long.parseLong(position.substring(0, separatorIdx))),
+					new ObjectId(position.substring(separatorIdx + 1)));
+		}
+		catch (DateTimeException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+		}
+	}
+
+	/** Position of the last review read, in the sort order of the reviews */
+	private record Cursor(LocalDate reviewDate, ObjectId id) {}
+}
@@ -0,0 +1,467 @@
+package demo.gameshop.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+
+import demo.gameshop.documents.User;
+import demo.gameshop.helpers.Csv;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.helpers.PasswordGenerator;
+import demo.gameshop.models.UserDetails;
+import demo.gameshop.models.UserForm;
+import demo.gameshop.repositories.UserRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Creates users in bulk from a CSV or NDJSON file, and exports the users in the same formats.
+ *
+ * <p>The file is read a batch of rows at a time, so it is never fully held in memory. For each batch:</p>
+ * <ol>
+ *   <li>Rows are validated with the constraints of {@link UserForm}, and must have known roles</li>
+ *   <li>The usernames and emails already taken are found with a single query</li>
+ *   <li>A random password is generated for each user (as when creating a user from the admin panel),
+ *       hashed on a pool of threads</li>
+ *   <li>The users are inserted with an unordered bulk write, so a failing insert does not stop the others</li>
+ * </ol>
+ * <p>Rows that could not be imported are reported with their errors, and do not stop the import.</p>
+ *
+ * <p>CSV files start with a header naming the columns, in any order, among {@link #COLUMNS}
+ * (other columns are ignored), with the roles separated by {@code ;}. NDJSON files have one
+ * JSON object per line with the same fields, the roles being an array. A byte order mark at the
+ * start of the file is skipped. Exported files can be imported again.</p>
+ *
+ * <p>The exported CSV values a spreadsheet would run as a formula (starting with {@code =}, {@code +},
+ * {@code -} or {@code @}) are prefixed with {@code '}, which is removed again on import.</p>
+ *
+ * <p>Configuration properties:</p>
+ * <ul>
+ *   <li>{@code gameshop.user-import.batch-size} - Number of rows checked and inserted at a time</li>
+ *   <li>{@code gameshop.user-import.hashing-threads} - Number of passwords hashed at the same time by
+ *       an import, defaults to half the number of cores to leave the others to the logins</li>
+ * </ul>
+ */
+@Service
+public class UserImportService {
+
+	/** Columns of the imported and exported files */
+	public static final List<String> COLUMNS = List.of(
+			"username", "email", "firstName", "lastName", "dateOfBirth", "phoneNumber", "address", "roles", "disabled");
+	/** Roles that can be given to the imported users */
+	static final Set<String> ROLES = Set.of("USER", "ADMIN");
+	private static final String ROLE_SEPARATOR = ";";
+	private static final int DUPLICATE_KEY_ERROR = 11000;
+
+	@Getter
+	@RequiredArgsConstructor
+	public enum Format {
+		CSV("text/csv"),
+		NDJSON(MediaType.APPLICATION_NDJSON_VALUE);
+
+		private final String contentType;
+	}
+
+	/**
+	 * A row that could not be imported.
+	 * @param row The number of the row, starting from 1 (not counting the CSV header)
+	 * @param username The username of the row, if it could be read
+	 * @param errors What is wrong with the row
+	 */
+	public record RowError(long row, String username, List<String> errors) {}
+
+	/**
+	 * @param rows The number of rows read
+	 * @param imported The number of users created
+	 * @param failed The number of rows that could not be imported
+	 */
+	public record ImportResult(long rows, long imported, long failed) {}
+
+	private final UserRepository userRepository;
+	private final MongoOperations mongoOperations;
+	private final PasswordEncoder passwordEncoder;
+	private final Validator validator;
+	private final ObjectMapper objectMapper;
+	private final int batchSize;
+	private final ExecutorService hashingExecutor;
+
+	public UserImportService(
+			UserRepository userRepository,
+			MongoOperations mongoOperations,
+			PasswordEncoder passwordEncoder,
+			Validator validator,
+			ObjectMapper objectMapper,
+			@Value("${gameshop.user-import.batch-size:500}") int batchSize,
+			@Value("${gameshop.user-import.hashing-threads:0}") int hashingThreads) {
+		this.userRepository = userRepository;
+		this.mongoOperations = mongoOperations;
+		this.passwordEncoder = passwordEncoder;
+		this.validator = validator;
+		this.objectMapper = objectMapper;
+		this.batchSize = batchSize;
+		int threads = hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		// Platform threads, hashing keeps them busy the whole time
+		this.hashingExecutor = Executors.newFixedThreadPool(threads,
+				Thread.ofPlatform().name("user-import-hashing-", 0).daemon().factory());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		hashingExecutor.shutdownNow();
+	}
+
+	/**
+	 * Imports the users of a file.
+	 * @param input The contents of the file, read until its end but not closed
+	 * @param format The format of the file
+	 * @param onError Called with the rows that could not be imported, in order, once per batch
+	 * @return The number of imported and failed rows
+	 * @throws IOException if the file could not be read, or is not a valid CSV file
+	 */
+	public ImportResult importUsers(@NonNull Reader input, @NonNull Format format, @NonNull Consumer<RowError> onError)
+			throws IOException {
+		RowReader rows = format == Format.CSV ? new CsvRowReader(input) : new NdjsonRowReader(input);
+		long count = 0;
+		long imported = 0;
+		long failed = 0;
+		List<Row> batch = new ArrayList<>(batchSize);
+		Row row;
+		do {
+			row = rows.next();
+			if (row != null) batch.add(row);
+			if (batch.size() == batchSize || (row == null && !batch.isEmpty())) {
+				List<RowError> errors = new ArrayList<>();
+				imported += importBatch(batch, errors);
+				count += batch.size();
+				failed += errors.size();
+				errors.sort(Comparator.comparingLong(RowError::row));
+				errors.forEach(onError);
+				batch.clear();
+			}
+		} while (row != null);
+		return new ImportResult(count, imported, failed);
+	}
+
+	/**
+	 * Writes all the users, ordered by username, reading them from a cursor while they are written.
+	 * @param output Where to write the users, it is not closed
+	 * @param format The format of the file
+	 * @throws IOException if the users could not be written
+	 */
+	public void exportUsers(@NonNull Writer output, @NonNull Format format) throws IOException {
+		if (format == Format.CSV) Csv.writeRecord(output, COLUMNS);
+		try (Stream<UserDetails> users = DocumentMapper.INSTANCE.toUserDetails(userRepository.streamAllForListing())) {
+			Iterator<UserDetails> it = users.iterator();
+			while (it.hasNext()) {
+				UserDetails user = it.next();
+				if (format == Format.CSV) {
+					Csv.writeRecord(output, toCsvRecord(user));
+				}
+				else {
+					output.write(objectMapper.writeValueAsString(toJsonRecord(user)));
+					output.write('\n');
+				}
+			}
+		}
+	}
+
+	/**
+	 * Imports a batch of rows.
+	 * @param errors Where to add the rows that could not be imported
+	 * @return The number of users created
+	 */
+	private long importBatch(List<Row> batch, List<RowError> errors) throws IOException {
+		// Validate the rows, and check the usernames and emails are not repeated in the batch
+		// (those of the previous batches are already stored)
+		List<Row> valid = new ArrayList<>(batch.size());
+		Set<String> usernames = new HashSet<>();
+		Set<String> emails = new HashSet<>();
+		for (Row row : batch) {
+			List<String> rowErrors = new ArrayList<>(row.errors());
+			if (rowErrors.isEmpty()) rowErrors.addAll(validate(row.form()));
+			if (rowErrors.isEmpty()) {
+				if (!usernames.add(row.form().getUsername())) rowErrors.add("username: Username already exists");
+				if (!emails.add(row.form().getEmail())) rowErrors.add("email: Email already exists");
+			}
+			if (rowErrors.isEmpty()) valid.add(row);
+			else errors.add(new RowError(row.number(), row.username(), rowErrors));
+		}
+		if (valid.isEmpty()) return 0;
+
+		// Find the usernames and emails already taken with a single query
+		Query query = Query.query(new Criteria().orOperator(
+				Criteria.where("username").in(usernames),
+				Criteria.where("email").in(emails)));
+		query.fields().include("username", "email");
+		Set<String> takenUsernames = new HashSet<>();
+		Set<String> takenEmails = new HashSet<>();
+		for (User user : mongoOperations.find(query, User.class)) {
+			takenUsernames.add(user.getUsername());
+			takenEmails.add(user.getEmail());
+		}
+		List<Row> available = new ArrayList<>(valid.size());
+		for (Row row : valid) {
+			List<String> rowErrors = new ArrayList<>();
+			if (takenUsernames.contains(row.form().getUsername())) rowErrors.add("username: Username already exists");
+			if (takenEmails.contains(row.form().getEmail())) rowErrors.add("email: Email already exists");
+			if (rowErrors.isEmpty()) available.add(row);
+			else errors.add(new RowError(row.number(), row.username(), rowErrors));
+		}
+		if (available.isEmpty()) return 0;
+
+		// Hash the generated passwords in parallel
+		List<Future<String>> hashes = new ArrayList<>(available.size());
+		for (int i = 0; i < available.size(); i++) {
+			hashes.add(hashingExecutor.submit(() -> passwordEncoder.encode(PasswordGenerator.generatePassword())));
+		}
+		List<User> users = new ArrayList<>(available.size());
+		List<Row> userRows = new ArrayList<>(available.size());
+		for (int i = 0; i < available.size(); i++) {
+			Row row = available.get(i);
+			try {
+				User user = toUser(row.form(), hashes.get(i).get());
+				user.setDisabled(row.disabled());
+				users.add(user);
+				userRows.add(row);
+			}
+			catch (ExecutionException e) {
+				errors.add(new RowError(row.number(), row.username(), List.of("password: " + e.getCause().getMessage())));
+			}
+			catch (InterruptedException e) {
+				hashes.forEach(hash -> hash.cancel(true));
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while hashing the passwords");
+			}
+		}
+		if (users.isEmpty()) return 0;
+
+		try {
+			return mongoOperations.bulkOps(BulkMode.UNORDERED, User.class)
+					.insert(users)
+					.execute()
+					.getInsertedCount();
+		}
+		catch (BulkOperationException e) {
+			// Created meanwhile by someone else
+			for (BulkWriteError error : e.getErrors()) {
+				Row row = userRows.get(error.getIndex());
+				String message = error.getCode() == DUPLICATE_KEY_ERROR
+						? "Username or email already exists"
+						: error.getMessage();
+				errors.add(new RowError(row.number(), row.username(), List.of(message)));
+			}
+			return e.getResult().getInsertedCount();
+		}
+	}
+
+	private List<String> validate(UserForm form) {
+		List<String> errors = new ArrayList<>();
+		for (ConstraintViolation<UserForm> violation : validator.validate(form)) {
+			errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+		}
+		if (form.getRoles() != null) {
+			for (String role : form.getRoles()) {
+				if (!ROLES.contains(role)) errors.add("roles: Unknown role " + role);
+			}
+		}
+		// Same order every time
+		errors.sort(null);
+		return errors;
+	}
+
+	private static User toUser(UserForm form, String encodedPassword) {
+		User user = new User(form.getUsername(), form.getEmail(), encodedPassword, form.getRoles());
+		user.setFirstName(form.getFirstName());
+		user.setLastName(form.getLastName());
+		user.setDateOfBirth(form.getDateOfBirth());
+		user.setPhoneNumber(form.getPhoneNumber());
+		user.setAddress(form.getAddress());
+		return user;
+	}
+
+	private static List<String> toCsvRecord(UserDetails user) {
+		return Stream.of(
+				user.getUsername(),
+				user.getEmail(),
+				user.getFirstName(),
+				user.getLastName(),
+				user.getDateOfBirth() != null ? user.getDateOfBirth().toString() : null,
+				user.getPhoneNumber(),
+				user.getAddress(),
+				user.getRoles() != null ? String.join(ROLE_SEPARATOR, new TreeSet<>(user.getRoles())) : null,
+				Boolean.toString(user.isDisabled()))
+			.map(Csv::escapeFormula)
+			.toList();
+	}
+
+	/** Removes the byte order mark starting the file, if any */
+	private static String stripBom(String value) {
+		return !value.isEmpty() && value.charAt(0) == Csv.BOM ? value.substring(1) : value;
+	}
+
+	private static Map<String, Object> toJsonRecord(UserDetails user) {
+		Map<String, Object> record = new LinkedHashMap<>();
+		record.put("username", user.getUsername());
+		record.put("email", user.getEmail());
+		record.put("firstName", user.getFirstName());
+		record.put("lastName", user.getLastName());
+		record.put("dateOfBirth", user.getDateOfBirth() != null ? user.getDateOfBirth().toString() : null);
+		record.put("phoneNumber", user.getPhoneNumber());
+		record.put("address", user.getAddress());
+		record.put("roles", user.getRoles() != null ? new TreeSet<>(user.getRoles()) : null);
+		record.put("disabled", user.isDisabled());
+		return record;
+	}
+
+	/**
+	 * A row of the imported file.
+	 * @param disabled Whether the user is created disabled
+	 * @param errors Why the row could not be read, empty if it was
+	 */
+	private record Row(long number, UserForm form, boolean disabled, List<String> errors) {
+		String username() {
+			return form != null ? form.getUsername() : null;
+		}
+	}
+
+	private interface RowReader {
+		/** @return The next row, or {@code null} at the end of the file */
+		Row next() throws IOException;
+	}
+
+	private static final class CsvRowReader implements RowReader {
+		private final PushbackReader reader;
+		private Map<String, Integer> columns;
+		private long number;
+
+		CsvRowReader(Reader input) {
+			this.reader = new PushbackReader(new BufferedReader(input), 1);
+		}
+
+		@Override
+		public Row next() throws IOException {
+			if (columns == null) {
+				List<String> header = Csv.readRecord(reader);
+				if (header == null) return null;
+				columns = new HashMap<>();
+				header.set(0, stripBom(header.get(0)));
+				for (int i = 0; i < header.size(); i++) columns.put(header.get(i).strip(), i);
+			}
+			List<String> values;
+			do {
+				values = Csv.readRecord(reader);
+				if (values == null) return null;
+			} while (values.size() == 1 && values.get(0).isBlank()); // Empty line
+			number++;
+			UserForm form = new UserForm();
+			List<String> errors = new ArrayList<>();
+			form.setUsername(value(values, "username"));
+			form.setEmail(value(values, "email"));
+			form.setFirstName(value(values, "firstName"));
+			form.setLastName(value(values, "lastName"));
+			form.setPhoneNumber(value(values, "phoneNumber"));
+			form.setAddress(value(values, "address"));
+			String dateOfBirth = value(values, "dateOfBirth");
+			if (dateOfBirth != null) {
+				try {
+					form.setDateOfBirth(LocalDate.parse(dateOfBirth));
+				}
+				catch (DateTimeParseException e) {
+					errors.add("dateOfBirth: Invalid date " + dateOfBirth);
+				}
+			}
+			String roles = value(values, "roles");
+			Set<String> roleSet = new TreeSet<>();
+			if (roles != null) {
+				for (String role : roles.split(ROLE_SEPARATOR)) {
+					if (!role.isBlank()) roleSet.add(role.strip());
+				}
+			}
+			form.setRoles(roleSet);
+			String disabled = value(values, "disabled");
+			if (disabled != null && !disabled.equalsIgnoreCase("true") && !disabled.equalsIgnoreCase("false")) {
+				errors.add("disabled: Invalid boolean " + disabled);
+			}
+			return new Row(number, form, Boolean.parseBoolean(disabled), errors);
+		}
+
+		/** @return The value of a column, {@code null} if missing or empty */
+		private String value(List<String> values, String column) {
+			Integer index = columns.get(column);
+			if (index == null || index >= values.size()) return null;
+			String value = Csv.unescapeFormula(values.get(index).strip());
+			return value.isEmpty() ? null : value;
+		}
+	}
+
+	private final class NdjsonRowReader implements RowReader {
+		private final BufferedReader reader;
+		private long number;
+
+		NdjsonRowReader(Reader input) {
+			this.reader = new BufferedReader(input);
+		}
+
+		@Override
+		public Row next() throws IOException {
+			String line;
+			do {
+				line = reader.readLine();
+				if (line == null) return null;
+				if (number == 0) line = stripBom(line);
+			} while (line.isBlank());
+			number++;
+			try {
+				JsonNode node = objectMapper.readTree(line);
+				// A null, array or value line would not be mapped to a user
+				if (!node.isObject()) return new Row(number, null, false, List.of("Invalid JSON: not an object"));
+				// UserForm does not have the disabled flag, it is read apart
+				boolean disabled = node.path("disabled").asBoolean(false);
+				return new Row(number, objectMapper.treeToValue(node, UserForm.class), disabled, List.of());
+			}
+			catch (JsonProcessingException e) {
+				return new Row(number, null, false, List.of("Invalid JSON: " + e.getOriginalMessage()));
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.repositories.GameRepository;
+import demo.gameshop.services.CatalogCache;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class CatalogCacheTests {
+
+	@Autowired
+	private GameRepository gameRepository;
+	private CatalogCache catalogCache;
+
+	@BeforeEach
+	public void setUp() {
+		gameRepository.deleteAll();
+		catalogCache = new CatalogCache(gameRepository, Duration.ofMinutes(5), DocumentMapper.DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	private Game saveGame(String title, String genre) {
+		Game game = new Game(title);
+		game.setGenre(genre);
+		return gameRepository.save(game);
+	}
+
+	@Test
+	public void testLookups() {
+		Game game = saveGame("Test Game", "Action");
+		saveGame("Other Game", "Puzzle");
+		assertThat(catalogCache.getGames()).hasSize(2);
+		GameDetails details = catalogCache.findByTitleNormalized("test-game").orElseThrow();
+		assertThat(details.getId()).isEqualTo(game.getId());
+		assertThat(details.getGenre()).isEqualTo("Action");
+		assertThat(catalogCache.getGames()).extracting(GameDetails::getTitleNormalized)
+				.containsExactly("other-game", "test-game");
+		assertThat(catalogCache.getGames().get(1)).isSameAs(details);
+		assertThat(catalogCache.getGamesNewestFirst()).extracting(GameDetails::getTitleNormalized)
+				.containsExactly("other-game", "test-game");
+		assertThat(catalogCache.getGenres()).containsExactly("Action", "Puzzle");
+		assertThat(catalogCache.findByTitleNormalized("missing-game")).isEmpty();
+	}
+
+	@Test
+	public void testInvalidate() {
+		Game game = saveGame("Test Game", "Action");
+		assertThat(catalogCache.getGames()).hasSize(1);
+		// Changes are not seen until the cache is invalidated
+		saveGame("Other Game", "Puzzle");
+		game.setGenre("Adventure");
+		gameRepository.save(game);
+		assertThat(catalogCache.getGames()).hasSize(1);
+		assertThat(catalogCache.findByTitleNormalized("test-game").orElseThrow().getGenre()).isEqualTo("Action");
+		catalogCache.invalidate();
+		assertThat(catalogCache.getGames()).hasSize(2);
+		assertThat(catalogCache.findByTitleNormalized("test-game").orElseThrow().getGenre()).isEqualTo("Adventure");
+		assertThat(catalogCache.getGenres()).containsExactly("Adventure", "Puzzle");
+	}
+
+	@Test
+	public void testDisabled() {
+		catalogCache = new CatalogCache(gameRepository, Duration.ZERO, DocumentMapper.DEFAULT_PARALLEL_THRESHOLD);
+		assertThat(catalogCache.getGames()).isEmpty();
+		Game game = saveGame("Test Game", "Action");
+		assertThat(catalogCache.getGames()).hasSize(1);
+		assertThat(catalogCache.findByTitleNormalized("test-game").orElseThrow().getId()).isEqualTo(game.getId());
+		game.setGenre("Puzzle");
+		gameRepository.save(game);
+		assertThat(catalogCache.findByTitleNormalized("test-game").orElseThrow().getGenre()).isEqualTo("Puzzle");
+		assertThat(catalogCache.findByTitleNormalized("missing-game")).isEmpty();
+	}
+}
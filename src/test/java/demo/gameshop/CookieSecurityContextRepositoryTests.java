@@ -0,0 +1,193 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import demo.gameshop.helpers.CookieSecurityContextRepository;
+import demo.gameshop.helpers.CookieSecurityContextRepository.SessionRevocations;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+
+public class CookieSecurityContextRepositoryTests {
+
+	private static final String COOKIE_NAME = "GAMESHOP_SESSION";
+	private static final Duration MAX_AGE = Duration.ofHours(1);
+	private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+	private final Map<String, UserDetails> users = new HashMap<>();
+	private final UserDetailsService userDetailsService = username -> {
+		UserDetails user = users.get(username);
+		if (user == null) throw new UsernameNotFoundException(username);
+		return User.withUserDetails(user).build();
+	};
+	private final Set<String> revokedSessions = new HashSet<>();
+	private final SessionRevocations revocations = new SessionRevocations() {
+		@Override
+		public boolean isSessionRevoked(String username, String sessionId) {
+			return revokedSessions.contains(username + "/" + sessionId);
+		}
+
+		@Override
+		public void revokeSession(String username, String sessionId, Instant expiresAt) {
+			revokedSessions.add(username + "/" + sessionId);
+		}
+	};
+
+	@BeforeEach
+	public void setUp() {
+		users.put("testuser", User.withUsername("testuser").password("password").roles("USER").build());
+	}
+
+	private CookieSecurityContextRepository repository(Instant now, String... secrets) {
+		return new CookieSecurityContextRepository(userDetailsService, revocations, List.of(secrets), COOKIE_NAME, MAX_AGE,
+				Clock.fixed(now, ZoneOffset.UTC));
+	}
+
+	/** Logs in the user and returns the issued cookie */
+	private Cookie login(CookieSecurityContextRepository repository) {
+		UserDetails user = users.get("testuser");
+		SecurityContext context = new SecurityContextImpl(
+				UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		repository.saveContext(context, new MockHttpServletRequest(), response);
+		Cookie cookie = response.getCookie(COOKIE_NAME);
+		assertThat(cookie).isNotNull();
+		assertThat(cookie.isHttpOnly()).isTrue();
+		return cookie;
+	}
+
+	private static String loadUsername(CookieSecurityContextRepository repository, Cookie cookie) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setCookies(cookie);
+		SecurityContext context = repository.loadDeferredContext(request).get();
+		return context.getAuthentication() != null ? context.getAuthentication().getName() : null;
+	}
+
+	@Test
+	public void testLoad() {
+		CookieSecurityContextRepository repository = repository(NOW, "secret");
+		Cookie cookie = login(repository);
+		assertThat(cookie.getValue()).doesNotContain("testuser");
+		assertThat(loadUsername(repository, cookie)).isEqualTo("testuser");
+		// Expired
+		assertThat(loadUsername(repository(NOW.plus(MAX_AGE), "secret"), cookie)).isNull();
+	}
+
+	@Test
+	public void testTampered() {
+		CookieSecurityContextRepository repository = repository(NOW, "secret");
+		String value = login(repository).getValue();
+		int middle = value.length() / 2;
+		String tampered = value.substring(0, middle) + (value.charAt(middle) == 'A' ? 'B' : 'A') + value.substring(middle + 1);
+		assertThat(loadUsername(repository, new Cookie(COOKIE_NAME, tampered))).isNull();
+		assertThat(loadUsername(repository, new Cookie(COOKIE_NAME, "not a cookie"))).isNull();
+	}
+
+	@Test
+	public void testKeyRotation() {
+		Cookie cookie = login(repository(NOW, "old secret"));
+		// Still read while the old key is configured, new cookies use the new key
+		CookieSecurityContextRepository rotated = repository(NOW, "new secret", "old secret");
+		assertThat(loadUsername(rotated, cookie)).isEqualTo("testuser");
+		Cookie newCookie = login(rotated);
+		assertThat(loadUsername(repository(NOW, "new secret"), newCookie)).isEqualTo("testuser");
+		assertThat(loadUsername(repository(NOW, "new secret"), cookie)).isNull();
+	}
+
+	@Test
+	public void testRevocation() {
+		CookieSecurityContextRepository repository = repository(NOW, "secret");
+		Cookie cookie = login(repository);
+		users.put("testuser", User.withUsername("testuser").password("password").roles("USER", "ADMIN").build());
+		assertThat(loadUsername(repository, cookie)).isNull();
+		users.put("testuser", User.withUsername("testuser").password("password").roles("USER").disabled(true).build());
+		assertThat(loadUsername(repository, cookie)).isNull();
+		users.remove("testuser");
+		assertThat(loadUsername(repository, cookie)).isNull();
+	}
+
+	@Test
+	public void testPasswordChange() {
+		CookieSecurityContextRepository repository = repository(NOW, "secret");
+		Cookie cookie = login(repository);
+		users.put("testuser", User.withUsername("testuser").password("new password").roles("USER").build());
+		assertThat(loadUsername(repository, cookie)).isNull();
+		assertThat(loadUsername(repository, login(repository))).isEqualTo("testuser");
+	}
+
+	@Test
+	public void testLogout() {
+		CookieSecurityContextRepository repository = repository(NOW, "secret");
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setCookies(login(repository));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		repository.saveContext(new SecurityContextImpl(), request, response);
+		assertThat(response.getCookie(COOKIE_NAME).getMaxAge()).isZero();
+	}
+
+	@Test
+	public void testLogoutRevokesOnlyItsSession() {
+		CookieSecurityContextRepository repository = repository(NOW, "secret");
+		Cookie cookie = login(repository);
+		Cookie otherDevice = login(repository);
+		// Renewed, the cookie it replaces is revoked with it
+		CookieSecurityContextRepository later = repository(NOW.plus(MAX_AGE.dividedBy(2)).plusSeconds(1), "secret");
+		Cookie renewed = renew(later, cookie);
+		assertThat(renewed.getValue()).isNotEqualTo(cookie.getValue());
+
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setCookies(renewed);
+		UserDetails user = users.get("testuser");
+		later.logoutHandler().logout(request, new MockHttpServletResponse(),
+				UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+		assertThat(loadUsername(later, renewed)).isNull();
+		assertThat(loadUsername(later, cookie)).isNull();
+		assertThat(loadUsername(later, otherDevice)).isEqualTo("testuser");
+		// Logging in again right away starts a new session
+		assertThat(loadUsername(later, login(later))).isEqualTo("testuser");
+	}
+
+	/** Sends a request with the cookie through the renewal filter, and returns the renewed cookie */
+	private static Cookie renew(CookieSecurityContextRepository repository, Cookie cookie) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setCookies(cookie);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		SecurityContextHolder.setContext(repository.loadDeferredContext(request).get());
+		try {
+			repository.renewalFilter().doFilter(request, response, new MockFilterChain());
+		}
+		catch (IOException | ServletException e) {
+			throw new IllegalStateException(e);
+		}
+		finally {
+			SecurityContextHolder.clearContext();
+		}
+		Cookie renewed = response.getCookie(COOKIE_NAME);
+		assertThat(renewed).isNotNull();
+		return renewed;
+	}
+}
@@ -0,0 +1,81 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.ActiveProfiles;
+
+import demo.gameshop.documents.User;
+import demo.gameshop.repositories.UserRepository;
+import demo.gameshop.services.CustomUserDetailsService;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class CustomUserDetailsServiceTests {
+
+	@Autowired
+	private UserRepository userRepository;
+	private CustomUserDetailsService userDetailsService;
+	private User user;
+
+	@BeforeEach
+	public void setUp() {
+		userRepository.deleteAll();
+		userDetailsService = new CustomUserDetailsService(userRepository, Duration.ofMinutes(5), 100);
+		user = userRepository.save(new User("testuser", "test.user@testmail.com", "password"));
+	}
+
+	@Test
+	public void testCachedByUsernameAndEmail() {
+		assertThat(userDetailsService.loadUserByUsername("testuser").isEnabled()).isTrue();
+		// Changes are not seen until the user is evicted, whether it is loaded by username or email
+		user.setDisabled(true);
+		userRepository.save(user);
+		assertThat(userDetailsService.loadUserByUsername("testuser").isEnabled()).isTrue();
+		assertThat(userDetailsService.loadUserByUsername("test.user@testmail.com").isEnabled()).isTrue();
+		userDetailsService.evict(user);
+		assertThat(userDetailsService.loadUserByUsername("test.user@testmail.com").isEnabled()).isFalse();
+		assertThat(userDetailsService.loadUserByUsername("testuser").isEnabled()).isFalse();
+		// Deleted users are not found anymore once evicted
+		userRepository.delete(user);
+		userDetailsService.evict(user);
+		assertThatExceptionOfType(UsernameNotFoundException.class)
+				.isThrownBy(() -> userDetailsService.loadUserByUsername("testuser"));
+	}
+
+	@Test
+	public void testErasedCredentialsAreNotCached() {
+		UserDetails userDetails = userDetailsService.loadUserByUsername("testuser");
+		((CredentialsContainer) userDetails).eraseCredentials();
+		assertThat(userDetails.getPassword()).isNull();
+		assertThat(userDetailsService.loadUserByUsername("testuser").getPassword()).isEqualTo("password");
+	}
+
+	@Test
+	public void testRevokeSession() {
+		Instant expiresAt = Instant.now().plusSeconds(3600);
+		assertThat(userDetailsService.isSessionRevoked("testuser", "session")).isFalse();
+		// Seen at once, although the user was cached
+		userDetailsService.revokeSession("testuser", "session", expiresAt);
+		assertThat(userDetailsService.isSessionRevoked("testuser", "session")).isTrue();
+		assertThat(userDetailsService.isSessionRevoked("testuser", "other session")).isFalse();
+		// The expired sessions are removed when another one is revoked
+		userDetailsService.revokeSession("testuser", "expired session", Instant.now().minusSeconds(60));
+		userDetailsService.revokeSession("testuser", "other session", expiresAt);
+		assertThat(userRepository.findByUsername("testuser").orElseThrow().getRevokedSessions())
+				.extracting(User.RevokedSession::id)
+				.containsExactly("session", "other session");
+		assertThat(userRepository.findByUsername("testuser").orElseThrow().getPassword()).isEqualTo("password");
+		assertThat(userDetailsService.isSessionRevoked("unknown", "session")).isFalse();
+	}
+}
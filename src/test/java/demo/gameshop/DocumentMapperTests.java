@@ -0,0 +1,117 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.documents.Review;
+import demo.gameshop.documents.User;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.helpers.ModelMapper;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.models.GameForm;
+import demo.gameshop.models.ReviewDetails;
+import demo.gameshop.models.UserDetails;
+import demo.gameshop.models.UserForm;
+
+public class DocumentMapperTests {
+
+	private static User createUser() {
+		User user = new User("testuser", "test.user@testmail.com", "password", "USER", "ADMIN");
+		user.setFirstName("Test");
+		user.setLastName("User");
+		user.setDateOfBirth(LocalDate.of(1990, 5, 1));
+		user.setPhoneNumber("123456789");
+		user.setAddress("Test Street");
+		user.setDisabled(true);
+		return user;
+	}
+
+	@Test
+	public void testGames() {
+		Game game = new Game("Tést & Game");
+		game.setGenre("Action");
+		game.setImageUrl("/images/test");
+		GameDetails details = DocumentMapper.INSTANCE.toGameDetails(game);
+		assertThat(details.getTitle()).isEqualTo("Tést & Game");
+		assertThat(details.getTitleNormalized()).isEqualTo("test-and-game");
+		assertThat(details.getGenre()).isEqualTo("Action");
+		assertThat(details.getImageUrl()).isEqualTo("/images/test");
+		GameForm form = DocumentMapper.INSTANCE.toGameForm(game);
+		assertThat(form.getTitleNormalized()).isEqualTo("test-and-game");
+		assertThat(form.getImageUrl()).isEqualTo("/images/test");
+		assertThat(form.getImageFile()).isNull();
+
+		List<Game> games = List.of(game, new Game("Game 2"), new Game("Game 3"));
+		assertThat(DocumentMapper.INSTANCE.toGameDetails(games)).extracting(GameDetails::getTitle)
+				.containsExactly("Tést & Game", "Game 2", "Game 3");
+	}
+
+	@Test
+	public void testUsers() {
+		User user = createUser();
+		UserDetails details = DocumentMapper.INSTANCE.toUserDetails(user);
+		assertThat(details.getUsername()).isEqualTo("testuser");
+		assertThat(details.getEmail()).isEqualTo("test.user@testmail.com");
+		assertThat(details.getRoles()).isEqualTo(Set.of("USER", "ADMIN"));
+		assertThat(details.getDateOfBirth()).isEqualTo(LocalDate.of(1990, 5, 1));
+		assertThat(details.getAddress()).isEqualTo("Test Street");
+		assertThat(details.isDisabled()).isTrue();
+		assertThat(details.getInitials()).isEqualTo("TU");
+		UserForm form = DocumentMapper.INSTANCE.toUserForm(user);
+		assertThat(form.getPhoneNumber()).isEqualTo("123456789");
+		assertThat(form.getRoles()).isEqualTo(Set.of("USER", "ADMIN"));
+		// Same result through the Mappable implementation
+		assertThat(ModelMapper.fromDocument(user, UserDetails::new))
+				.usingRecursiveComparison()
+				.isEqualTo(details);
+	}
+
+	@Test
+	public void testReviews() {
+		Review review = new Review("test-game", createUser(), 4, "Good");
+		ReviewDetails details = DocumentMapper.INSTANCE.toReviewDetails(List.of(review)).get(0);
+		assertThat(details.getUsername()).isEqualTo("testuser");
+		assertThat(details.getFirstName()).isEqualTo("Test");
+		assertThat(details.getRating()).isEqualTo(4);
+		assertThat(details.getReview()).isEqualTo("Good");
+		assertThat(details.getReviewDate()).isEqualTo(LocalDate.now());
+	}
+
+	@Test
+	public void testGamesInParallel() {
+		List<Game> games = IntStream.range(0, 100)
+				.mapToObj(i -> new Game("Test Game " + i))
+				.toList();
+		// Same result in the same order, with and without splitting the work
+		List<GameDetails> sequential = DocumentMapper.INSTANCE.toGameDetails(games, Integer.MAX_VALUE);
+		List<GameDetails> parallel = DocumentMapper.INSTANCE.toGameDetails(games, 10);
+		assertThat(parallel).extracting(GameDetails::getTitle)
+				.containsExactlyElementsOf(sequential.stream().map(GameDetails::getTitle).toList());
+	}
+
+	@Test
+	public void testStreamIsLazy() {
+		AtomicInteger read = new AtomicInteger();
+		AtomicBoolean closed = new AtomicBoolean();
+		Stream<User> users = Stream.of(createUser(), createUser())
+				.peek(u -> read.incrementAndGet())
+				.onClose(() -> closed.set(true));
+		// Documents are only read when the models are
+		try (Stream<UserDetails> details = DocumentMapper.INSTANCE.toUserDetails(users)) {
+			assertThat(read).hasValue(0);
+			assertThat(details.findFirst()).get().extracting(UserDetails::getUsername).isEqualTo("testuser");
+			assertThat(read).hasValue(1);
+		}
+		assertThat(closed).isTrue();
+	}
+}
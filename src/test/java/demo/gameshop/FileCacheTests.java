@@ -0,0 +1,99 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Date;
+
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import demo.gameshop.services.FileCache;
+
+public class FileCacheTests {
+
+	@TempDir
+	private Path directory;
+	private FileCache cache;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		cache = new FileCache(directory.toString(), DataSize.ofBytes(100), DataSize.ofBytes(60));
+	}
+
+	private static GridFSFile createFile(int length) {
+		return new GridFSFile(new BsonObjectId(new ObjectId()), "test.png", length, 255 * 1024,
+				new Date(), new Document("_contentType", "image/png"));
+	}
+
+	private static InputStream content(int length) {
+		return new ByteArrayInputStream(new byte[length]);
+	}
+
+	private static String id(GridFSFile file) {
+		return file.getObjectId().toHexString();
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		GridFSFile file = createFile(10);
+		assertThat(cache.getFile(id(file))).isEmpty();
+		assertThat(cache.put(file, content(10))).isTrue();
+		assertThat(cache.getFile(id(file))).containsSame(file);
+		assertThat(cache.size()).isEqualTo(10);
+		try (FileChannel channel = cache.open(id(file)).orElseThrow()) {
+			assertThat(channel.size()).isEqualTo(10);
+		}
+		// Files bigger than the max file size are not cached
+		GridFSFile big = createFile(61);
+		assertThat(cache.isCacheable(big)).isFalse();
+		assertThat(cache.put(big, content(61))).isFalse();
+		assertThat(cache.getFile(id(big))).isEmpty();
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		GridFSFile first = createFile(40);
+		GridFSFile second = createFile(40);
+		GridFSFile third = createFile(40);
+		cache.put(first, content(40));
+		cache.put(second, content(40));
+		// Use the first file so the second one becomes the least recently used
+		assertThat(cache.getFile(id(first))).isPresent();
+		cache.put(third, content(40));
+		assertThat(cache.getFile(id(first))).isPresent();
+		assertThat(cache.getFile(id(second))).isEmpty();
+		assertThat(cache.getFile(id(third))).isPresent();
+		assertThat(cache.size()).isEqualTo(80);
+		// Explicit eviction
+		cache.evict(id(first));
+		assertThat(cache.getFile(id(first))).isEmpty();
+		assertThat(cache.size()).isEqualTo(40);
+		cache.clear();
+		assertThat(cache.size()).isZero();
+	}
+
+	@Test
+	public void testOpenChannelSurvivesEviction() throws IOException {
+		GridFSFile file = createFile(10);
+		cache.put(file, new ByteArrayInputStream("0123456789".getBytes()));
+		try (FileChannel channel = cache.open(id(file)).orElseThrow()) {
+			cache.evict(id(file));
+			ByteBuffer buffer = ByteBuffer.allocate(10);
+			channel.read(buffer, 0);
+			assertThat(new String(buffer.array())).isEqualTo("0123456789");
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import demo.gameshop.services.FileCache;
+import demo.gameshop.services.FileService;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class FileServiceTests {
+
+	/** A bit more than two chunks of the default chunk size (255 KiB) */
+	private static final int FILE_SIZE = 600 * 1024;
+
+	@TempDir
+	private Path directory;
+	@Autowired
+	private GridFsTemplate gridFsTemplate;
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	private FileService fileService;
+	private byte[] content;
+	private GridFSFile file;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		gridFsTemplate.delete(new Query());
+		// Caching disabled, so the contents are read from GridFS
+		FileCache cache = new FileCache(directory.toString(), DataSize.ofBytes(0), DataSize.ofBytes(0));
+		fileService = new FileService(gridFsTemplate, gridFsTemplate, mongoTemplate, cache);
+		content = new byte[FILE_SIZE];
+		new Random(42).nextBytes(content);
+		String id = fileService.addFile(new ByteArrayInputStream(content), FILE_SIZE, "test.png", "image/png", null);
+		file = fileService.findById(id).orElseThrow();
+	}
+
+	private byte[] copyRange(long start, long end) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fileService.copyRange(file, start, end, out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testCopyRange() throws IOException {
+		int chunkSize = file.getChunkSize();
+		assertThat(copyRange(0, FILE_SIZE - 1)).isEqualTo(content);
+		// Within a chunk, across chunks and up to the end
+		assertThat(copyRange(10, 20)).isEqualTo(Arrays.copyOfRange(content, 10, 21));
+		assertThat(copyRange(chunkSize - 5, chunkSize + 5))
+				.isEqualTo(Arrays.copyOfRange(content, chunkSize - 5, chunkSize + 6));
+		assertThat(copyRange(chunkSize * 2 + 1, FILE_SIZE - 1))
+				.isEqualTo(Arrays.copyOfRange(content, chunkSize * 2 + 1, FILE_SIZE));
+		assertThat(copyRange(chunkSize, chunkSize)).containsExactly(content[chunkSize]);
+	}
+}
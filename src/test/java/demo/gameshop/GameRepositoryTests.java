@@ -9,6 +9,7 @@ import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.test.context.ActiveProfiles;
 
 import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.StreamIterator;
 import demo.gameshop.repositories.GameRepository;
 
 @DataMongoTest
@@ -60,4 +61,25 @@ public class GameRepositoryTests {
 		normalizedTitle = Game.normalizeTitle("Alex´s Test");
 		assertThat(normalizedTitle).isEqualTo("alex-s-test");
 	}
+
+	@Test
+	public void testStreamAllForListing() {
+		for (int i = 0; i < 5; i++) {
+			Game game = new Game("Test Game " + i);
+			game.setGenre("Test");
+			gameRepository.save(game);
+		}
+		// Read from a cursor until the end, which closes it
+		StreamIterator<Game> games = new StreamIterator<>(gameRepository.streamAllForListing());
+		int count = 0;
+		while (games.hasNext()) {
+			Game game = games.next();
+			assertThat(game.getId()).isNotNull();
+			assertThat(game.getTitleNormalized()).startsWith("test-game-");
+			assertThat(game.getGenre()).isEqualTo("Test");
+			count++;
+		}
+		assertThat(count).isEqualTo(5);
+		assertThat(games.hasNext()).isFalse();
+	}
 }
@@ -0,0 +1,189 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.repositories.GameRepository;
+import demo.gameshop.services.GameSearchIndex;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class GameSearchIndexTests {
+
+	@Autowired
+	private GameRepository gameRepository;
+	private GameSearchIndex searchIndex;
+
+	@BeforeEach
+	public void setUp() {
+		gameRepository.deleteAll();
+		saveGame("The Legend of Zelda", "Adventure");
+		saveGame("Super Mario Bros.", "Platformer");
+		saveGame("Mario & Luigi", "RPG");
+		saveGame("Portal 2", "Puzzle");
+		searchIndex = new GameSearchIndex(gameRepository, Duration.ZERO);
+	}
+
+	private Game saveGame(String title, String genre) {
+		Game game = new Game(title);
+		game.setGenre(genre);
+		return gameRepository.save(game);
+	}
+
+	@Test
+	public void testSearch() {
+		assertThat(searchIndex.search("zelda", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("The Legend of Zelda");
+		// Both words match the first one, only one matches the second one
+		assertThat(searchIndex.search("mario luigi", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("Mario & Luigi", "Super Mario Bros.");
+		// Genres are searched too
+		assertThat(searchIndex.search("puzzle", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("Portal 2");
+		assertThat(searchIndex.search("  !? ", 10)).isEmpty();
+		assertThat(searchIndex.search("mario", 1)).hasSize(1);
+	}
+
+	@Test
+	public void testAutocomplete() {
+		// The last word may not be fully typed
+		assertThat(searchIndex.search("leg", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("The Legend of Zelda");
+		assertThat(searchIndex.search("super mar", 10)).extracting(GameDetails::getTitle)
+				.first().isEqualTo("Super Mario Bros.");
+	}
+
+	@Test
+	public void testTypos() {
+		assertThat(searchIndex.search("zelad", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("The Legend of Zelda");
+		assertThat(searchIndex.search("Mraio", 10)).extracting(GameDetails::getTitle)
+				.containsExactlyInAnyOrder("Mario & Luigi", "Super Mario Bros.");
+		assertThat(searchIndex.search("portl", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("Portal 2");
+	}
+
+	@Test
+	public void testShortTypos() {
+		saveGame("Cat Quest", "RPG");
+		// No bigram or trigram in common with the title, the terms of a close length are compared
+		assertThat(searchIndex.search("mxrxo", 10)).extracting(GameDetails::getTitle)
+				.containsExactlyInAnyOrder("Mario & Luigi", "Super Mario Bros.");
+		// Substitution of the middle character
+		assertThat(searchIndex.search("cut", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("Cat Quest");
+		// Transposition
+		assertThat(searchIndex.search("act", 10)).extracting(GameDetails::getTitle)
+				.containsExactly("Cat Quest");
+	}
+
+	@Test
+	public void testIncrementalUpdates() {
+		assertThat(searchIndex.search("portal", 10)).hasSize(1);
+		Game added = saveGame("Portal Knights", "Action");
+		searchIndex.put(added);
+		assertThat(searchIndex.search("portal", 10)).hasSize(2);
+		added.setTitle("Dungeon Knights");
+		gameRepository.save(added);
+		searchIndex.put(added);
+		assertThat(searchIndex.search("portal", 10)).hasSize(1);
+		assertThat(searchIndex.search("dungeon", 10)).extracting(GameDetails::getId).containsExactly(added.getId());
+		searchIndex.remove(added.getId());
+		assertThat(searchIndex.search("dungeon", 10)).isEmpty();
+		assertThat(searchIndex.search("knights", 10)).isEmpty();
+	}
+
+	@Test
+	public void testExpiredIndexIsReloaded() {
+		MutableClock clock = new MutableClock();
+		searchIndex = new GameSearchIndex(gameRepository, Duration.ofMinutes(5), clock);
+		assertThat(searchIndex.search("portal", 10)).hasSize(1);
+		// Saved by another instance, without updating this index
+		saveGame("Portal Knights", "Action");
+		clock.advance(Duration.ofMinutes(4));
+		assertThat(searchIndex.search("portal", 10)).hasSize(1);
+		clock.advance(Duration.ofMinutes(1));
+		assertThat(searchIndex.search("portal", 10)).hasSize(2);
+	}
+
+	@Test
+	public void testChangesMadeWhileReloadingAreKept() {
+		Game deleted = saveGame("Portal Knights", "Action");
+		assertThat(searchIndex.search("portal", 10)).hasSize(2);
+		// Deleted by another request after being read, before all the games are read
+		List<Game> games = gameRepository.findAll();
+		searchIndex = new GameSearchIndex(streaming(() -> games.stream().peek(game -> {
+			if (game.getId().equals(deleted.getId())) searchIndex.remove(deleted.getId());
+		})), Duration.ZERO);
+		searchIndex.reload();
+		assertThat(searchIndex.search("portal", 10)).extracting(GameDetails::getTitle).containsExactly("Portal 2");
+	}
+
+	@Test
+	public void testFailedReloadKeepsIndex() {
+		MutableClock clock = new MutableClock();
+		AtomicBoolean failing = new AtomicBoolean();
+		searchIndex = new GameSearchIndex(streaming(() -> gameRepository.streamAllForListing().peek(game -> {
+			if (failing.get()) throw new DataAccessResourceFailureException("Connection lost");
+		})), Duration.ofMinutes(5), clock);
+		assertThat(searchIndex.search("portal", 10)).hasSize(1);
+		failing.set(true);
+		clock.advance(Duration.ofMinutes(5));
+		assertThat(searchIndex.search("portal", 10)).hasSize(1);
+		assertThat(searchIndex.search("zelda", 10)).hasSize(1);
+	}
+
+	/** Repository of the games streaming the given games, the index does not call its other methods */
+	private static GameRepository streaming(Supplier<Stream<Game>> games) {
+		return (GameRepository) Proxy.newProxyInstance(
+				GameRepository.class.getClassLoader(),
+				new Class<?>[] { GameRepository.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("streamAllForListing")) return games.get();
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	/** Clock moved forward by the tests */
+	private static final class MutableClock extends Clock {
+		private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+		void advance(Duration duration) {
+			now = now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
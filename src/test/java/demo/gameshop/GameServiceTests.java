@@ -0,0 +1,114 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import demo.gameshop.documents.Game;
+import demo.gameshop.helpers.DocumentMapper;
+import demo.gameshop.models.CursorPage;
+import demo.gameshop.models.GameDetails;
+import demo.gameshop.repositories.GameRepository;
+import demo.gameshop.services.CatalogCache;
+import demo.gameshop.services.GameService;
+import demo.gameshop.services.GameService.Order;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class GameServiceTests {
+
+	private static final int GAME_COUNT = 8;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private GameRepository gameRepository;
+	/** Reads the games from MongoDB */
+	private GameService gameService;
+	/** Reads the games from the catalog cache */
+	private GameService cachedGameService;
+
+	@BeforeEach
+	public void setUp() {
+		gameRepository.deleteAll();
+		gameService = new GameService(mongoTemplate, new CatalogCache(gameRepository, Duration.ZERO, DocumentMapper.DEFAULT_PARALLEL_THRESHOLD));
+		cachedGameService = new GameService(mongoTemplate, new CatalogCache(gameRepository, Duration.ofMinutes(5), DocumentMapper.DEFAULT_PARALLEL_THRESHOLD));
+		for (int i = 0; i < GAME_COUNT; i++) {
+			Game game = new Game("Game " + (char) ('H' - i));
+			game.setGenre(i % 2 == 0 ? "Action" : "Puzzle");
+			gameRepository.save(game);
+		}
+	}
+
+	/**
+	 * Reads all the pages, checking the cached games are the same as the ones read from MongoDB.
+	 */
+	private List<GameDetails> readAll(String genre, Order order, int count) {
+		List<GameDetails> games = new ArrayList<>();
+		String cursor = null;
+		CursorPage<GameDetails> page;
+		do {
+			page = gameService.getGames(genre, order, cursor, count);
+			CursorPage<GameDetails> cachedPage = cachedGameService.getGames(genre, order, cursor, count);
+			assertThat(cachedPage.content()).extracting(GameDetails::getId)
+					.isEqualTo(page.content().stream().map(GameDetails::getId).toList());
+			assertThat(cachedPage.nextCursor()).isEqualTo(page.nextCursor());
+			games.addAll(page.content());
+			cursor = page.nextCursor();
+		} while (page.hasNext());
+		return games;
+	}
+
+	@Test
+	public void testGetGamesByTitle() {
+		List<GameDetails> games = readAll(null, Order.TITLE, 3);
+		assertThat(games).extracting(GameDetails::getTitleNormalized)
+				.hasSize(GAME_COUNT)
+				.doesNotHaveDuplicates()
+				.isSorted();
+		// Only the listed fields are read
+		assertThat(games).allSatisfy(game -> {
+			assertThat(game.getId()).isNotNull();
+			assertThat(game.getTitle()).isNotNull();
+			assertThat(game.getGenre()).isNotNull();
+		});
+	}
+
+	@Test
+	public void testGetGamesNewest() {
+		List<GameDetails> games = readAll(null, Order.NEWEST, 3);
+		assertThat(games).extracting(GameDetails::getId)
+				.hasSize(GAME_COUNT)
+				.doesNotHaveDuplicates()
+				.isSortedAccordingTo((a, b) -> b.compareTo(a));
+	}
+
+	@Test
+	public void testGetGamesOfGenre() {
+		List<GameDetails> games = readAll("Puzzle", Order.TITLE, 3);
+		assertThat(games).hasSize(GAME_COUNT / 2).allMatch(game -> "Puzzle".equals(game.getGenre()));
+		assertThat(readAll("Action", Order.NEWEST, 3)).hasSize(GAME_COUNT / 2);
+		assertThat(gameService.getGenres()).containsExactly("Action", "Puzzle");
+		assertThat(cachedGameService.getGenres()).containsExactly("Action", "Puzzle");
+	}
+
+	@Test
+	public void testInvalidCursor() {
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> gameService.getGames(null, Order.NEWEST, "not an id", 3));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> cachedGameService.getGames(null, Order.NEWEST, "not an id", 3));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> cachedGameService.getGames(null, Order.TITLE, null, 0));
+	}
+}
@@ -0,0 +1,82 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import demo.gameshop.documents.Game;
+
+/**
+ * Checks {@link Game#normalizeTitle(String)} gives the same results as the regular
+ * expression based normalizer it replaced.
+ */
+public class GameTitleNormalizerTests {
+
+	private static final int RANDOM_TITLES = 200_000;
+	private static final int MAX_RANDOM_LENGTH = 24;
+
+	/** Characters the random titles are made of, with every kind of character the normalizer handles */
+	private static final String[] ALPHABET = {
+			"a", "Z", "m", "0", "7", "_", "-", "'", " ", "  ", "\t", "\n", "\u000B", "\f", "\r",
+			"&", "&&", "+", "++", "!", "?", "\"", "@", "#", "$", "/", "\\", "[", "(", "{", ".", ",", ":", "~", "^", "*",
+			"é", "Ç", "ã", "Ü", "ß", "ø", "Ł", "ł", "æ", "İ", "ı", "\u212A", "Å", "ﬁ", "½", "²", "…", "€", "¨", "´",
+			"\u0301", "\u0327", "\u00A0", "\u2009", "\u3000", "＆", "＋", "Ａ", "ｚ", "–", "’",
+			"日本", "ゲーム", "Ωμέγα", "Σ", "ς", "Ж", "😀", "𝐀", "\u200B", "\u0000", "\u007F", "\u001F"
+	};
+
+	private static final List<String> TITLES = List.of(
+			"", " ", "Test Game", "Test_Game-2!?", "Tést Gãme", "Test&Game", "Test & Game",
+			"    Test Game", "Test Game			", "     Test\nGame			",
+			"Test+Game!\"@#$€^~*¨'?+/\\[](){}", "Test+Game!\"@#$€^~*¨&'?&+/\\[](){}",
+			"Alex's Test", "Alex´s Test", "The Legend of Zelda: Breath of the Wild",
+			"Pokémon™ Scarlet & Violet", "Ōkami HD", "Baldur's Gate 3", "NieR:Automata™",
+			"Half-Life²", "Final Fantasy VII Remake", "Tom Clancy's Rainbow Six® Siege",
+			"Marvel's Spider-Man 2", "C++ Simulator", "A&&B", "A & & B", "A&ß&B", "A+é+B",
+			"&Start", "End&", "+", "&", "---", "''", "Ｆｕｌｌ Ｗｉｄｔｈ", "½ Life", "Ærø", "Łódź Racer",
+			"Straße", "İstanbul Drift", "ΣΟΦΙΑ", "Grand Theft Auto V", "DOOM (1993)", "Portal 2");
+
+	/** The previous implementation of {@link Game#normalizeTitle(String)} */
+	private static final Pattern AND_PATTERN = Pattern.compile("&+");
+	private static final Pattern PLUS_PATTERN = Pattern.compile("\\++");
+	private static final Pattern REMOVE_PATTERN = Pattern.compile("[^\\w\\s-_']+");
+	private static final Pattern SPACE_PATTERN = Pattern.compile("[\\s-_']+");
+	private static final Pattern TRIM_PATTERN = Pattern.compile("(?:^-+|-+$)+");
+	private static String normalizeTitleWithPatterns(String name) {
+		// The default locale is not used, so the result does not depend on the machine
+		String result = StringUtils.stripAccents(name).toLowerCase(Locale.ROOT);
+		result = AND_PATTERN.matcher(result).replaceAll(" and ");
+		result = PLUS_PATTERN.matcher(result).replaceAll(" plus ");
+		result = REMOVE_PATTERN.matcher(result).replaceAll("");
+		result = SPACE_PATTERN.matcher(result).replaceAll("-");
+		result = TRIM_PATTERN.matcher(result).replaceAll("");
+		return result;
+	}
+
+	@Test
+	public void testSameAsPatterns() {
+		for (String title : TITLES) {
+			assertThat(Game.normalizeTitle(title)).as(title).isEqualTo(normalizeTitleWithPatterns(title));
+		}
+	}
+
+	@Test
+	public void testSameAsPatternsOnRandomTitles() {
+		Random random = new Random(42);
+		StringBuilder title = new StringBuilder();
+		for (int i = 0; i < RANDOM_TITLES; i++) {
+			title.setLength(0);
+			int length = random.nextInt(MAX_RANDOM_LENGTH + 1);
+			// Half of the titles are ASCII only, which do not need their accents stripped
+			int alphabetSize = i % 2 == 0 ? 36 : ALPHABET.length;
+			for (int j = 0; j < length; j++) title.append(ALPHABET[random.nextInt(alphabetSize)]);
+			String text = title.toString();
+			assertThat(Game.normalizeTitle(text)).as(text).isEqualTo(normalizeTitleWithPatterns(text));
+		}
+	}
+}
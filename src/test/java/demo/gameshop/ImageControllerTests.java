@@ -0,0 +1,154 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.AutoConfigureDataMongo;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import demo.gameshop.controllers.ImageController;
+import demo.gameshop.services.FileCache;
+import demo.gameshop.services.FileService;
+import demo.gameshop.services.ImageService;
+
+@WebMvcTest(controllers = ImageController.class)
+@AutoConfigureDataMongo
+@Import({ FileCache.class, FileService.class, ImageService.class })
+@WithMockUser
+@ActiveProfiles(profiles = {"test"})
+public class ImageControllerTests {
+
+	private static final Path IMAGE_PATH = Path.of("src/test/resources/demo/gameshop/test-image.png");
+
+	@Autowired
+	private MockMvc mockMvc;
+	@Autowired
+	private GridFsTemplate gridFsTemplate;
+	@Autowired
+	private FileService fileService;
+	@Autowired
+	private ImageService imageService;
+	private byte[] content;
+	private GridFSFile image;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		gridFsTemplate.delete(new Query());
+		content = Files.readAllBytes(IMAGE_PATH);
+		try (InputStream input = new FileInputStream(IMAGE_PATH.toFile())) {
+			String id = imageService.addImage(input, "test-image.png", "image/png", -1);
+			image = fileService.findById(id).orElseThrow();
+		}
+	}
+
+	private String url() {
+		return "/images/" + image.getObjectId().toHexString();
+	}
+
+	@Test
+	public void testGetImage() throws Exception {
+		mockMvc.perform(get(url()))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, content.length))
+				.andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+				.andExpect(content().bytes(content));
+		mockMvc.perform(get("/images/000000000000000000000000"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		String eTag = mockMvc.perform(get(url()))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).isNotNull();
+		mockMvc.perform(get(url()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, eTag))
+				.andExpect(content().bytes(new byte[0]));
+		mockMvc.perform(get(url()).header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		mockMvc.perform(get(url()).header(HttpHeaders.RANGE, "bytes=100-199"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 100-199/" + content.length))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 100))
+				.andExpect(content().bytes(Arrays.copyOfRange(content, 100, 200)));
+		// Suffix range, the last bytes of the file
+		mockMvc.perform(get(url()).header(HttpHeaders.RANGE, "bytes=-10"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+						"bytes " + (content.length - 10) + "-" + (content.length - 1) + "/" + content.length))
+				.andExpect(content().bytes(Arrays.copyOfRange(content, content.length - 10, content.length)));
+	}
+
+	@Test
+	public void testUnsatisfiableRange() throws Exception {
+		mockMvc.perform(get(url()).header(HttpHeaders.RANGE, "bytes=" + content.length + "-"))
+				.andExpect(status().isRequestedRangeNotSatisfiable())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + content.length));
+	}
+
+	@Test
+	public void testInvalidRangeIsIgnored() throws Exception {
+		mockMvc.perform(get(url()).header(HttpHeaders.RANGE, "bytes=oops"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+				.andExpect(content().bytes(content));
+		// Multiple ranges are answered with the whole file too
+		mockMvc.perform(get(url()).header(HttpHeaders.RANGE, "bytes=0-9,20-29"))
+				.andExpect(status().isOk())
+				.andExpect(content().bytes(content));
+	}
+
+	@Test
+	public void testVariant() throws Exception {
+		// The test image is 214 pixels wide, so only the smallest variant was generated
+		Document variant = image.getMetadata().getList("variants", Document.class).get(0);
+		assertThat(variant.getInteger("width")).isEqualTo(160);
+		String variantId = variant.getString("id");
+		GridFSFile variantFile = fileService.findById(variantId).orElseThrow();
+
+		String eTag = mockMvc.perform(get(url()).param("w", "100"))
+				.andExpect(status().isOk())
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, variantFile.getLength()))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).startsWith("\"" + variantId + "-");
+		// No variant as wide as requested, the original is sent
+		mockMvc.perform(get(url()).param("w", "200"))
+				.andExpect(status().isOk())
+				.andExpect(content().bytes(content));
+		// Downloads always get the original
+		mockMvc.perform(get(url()).param("w", "100").param("download", "true"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Disposition", "attachment; filename=test-image.png"))
+				.andExpect(content().bytes(content));
+	}
+}
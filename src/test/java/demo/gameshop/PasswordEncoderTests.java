@@ -0,0 +1,71 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import demo.gameshop.helpers.BoundedPasswordEncoder;
+
+public class PasswordEncoderTests {
+
+	@Test
+	public void testUpgradeEncoding() {
+		PasswordEncoder encoder = SecurityConfig.createPasswordEncoder(5);
+		// Hashes stored before the encoder ids were added still match, but are upgraded
+		String oldHash = new BCryptPasswordEncoder(4).encode("password");
+		assertThat(encoder.matches("password", oldHash)).isTrue();
+		assertThat(encoder.matches("wrong", oldHash)).isFalse();
+		assertThat(encoder.upgradeEncoding(oldHash)).isTrue();
+
+		String hash = encoder.encode("password");
+		assertThat(hash).startsWith("{bcrypt}");
+		assertThat(encoder.matches("password", hash)).isTrue();
+		assertThat(encoder.upgradeEncoding(hash)).isFalse();
+		// Upgraded again once the strength is increased
+		assertThat(SecurityConfig.createPasswordEncoder(6).upgradeEncoding(hash)).isTrue();
+	}
+
+	@Test
+	public void testCalibrateBCryptStrength() {
+		assertThat(SecurityConfig.calibrateBCryptStrength(Duration.ZERO)).isEqualTo(SecurityConfig.MIN_BCRYPT_STRENGTH);
+	}
+
+	@Test
+	public void testBusy() throws InterruptedException {
+		CountDownLatch hashing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		PasswordEncoder slowEncoder = new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				hashing.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return rawPassword.toString();
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				return rawPassword.toString().equals(encodedPassword);
+			}
+		};
+		BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(slowEncoder, 1, Duration.ofMillis(10));
+		Thread thread = Thread.ofVirtual().start(() -> encoder.encode("password"));
+		hashing.await();
+		// The only permit is taken by the other thread
+		assertThatExceptionOfType(BoundedPasswordEncoder.BusyException.class)
+				.isThrownBy(() -> encoder.matches("password", "password"));
+		release.countDown();
+		thread.join();
+		assertThat(encoder.matches("password", "password")).isTrue();
+	}
+}
@@ -0,0 +1,175 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import demo.gameshop.documents.GameReview;
+import demo.gameshop.documents.Review;
+import demo.gameshop.documents.User;
+import demo.gameshop.models.CursorPage;
+import demo.gameshop.repositories.GameReviewRepository;
+import demo.gameshop.repositories.ReviewRepository;
+import demo.gameshop.repositories.UserRepository;
+import demo.gameshop.services.ReviewService;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class ReviewServiceTests {
+
+	private static final String GAME_ID = "test-game";
+	private static final int REVIEW_COUNT = 7;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+	@Autowired
+	private ReviewRepository reviewRepository;
+	@Autowired
+	private UserRepository userRepository;
+	@Autowired
+	private GameReviewRepository gameReviewRepository;
+	private ReviewService reviewService;
+
+	@BeforeEach
+	public void setUp() {
+		reviewRepository.deleteAll();
+		userRepository.deleteAll();
+		reviewService = new ReviewService(mongoTemplate);
+		for (int i = 0; i < REVIEW_COUNT; i++) {
+			User user = userRepository.save(new User("user" + i, "user" + i + "@testmail.com", "password"));
+			reviewRepository.save(new Review(GAME_ID, user, i % 5 + 1, "Review " + i));
+		}
+	}
+
+	@Test
+	public void testGetReviewsAfter() {
+		// Page through all reviews with cursors
+		List<String> ids = new ArrayList<>();
+		String cursor = null;
+		CursorPage<Review> page;
+		do {
+			page = reviewService.getReviewsAfter(GAME_ID, cursor, 3);
+			page.content().forEach(review -> ids.add(review.getId()));
+			cursor = page.nextCursor();
+		} while (page.hasNext());
+		// Every review is returned once, newest first (all have the same date, so by id)
+		assertThat(ids).hasSize(REVIEW_COUNT).doesNotHaveDuplicates();
+		assertThat(ids).isSortedAccordingTo((a, b) -> b.compareTo(a));
+		// Same order as with offsets
+		List<String> offsetIds = reviewService.getReviews(GAME_ID, 0, REVIEW_COUNT).content().stream()
+				.map(Review::getId)
+				.toList();
+		assertThat(ids).isEqualTo(offsetIds);
+	}
+
+	@Test
+	public void testNewReviewDoesNotShiftPages() {
+		CursorPage<Review> first = reviewService.getReviewsAfter(GAME_ID, null, 3);
+		String cursor = first.nextCursor();
+		// A review added after the first page was read is not in the next page
+		User user = userRepository.save(new User("late", "late@testmail.com", "password"));
+		Review late = reviewRepository.save(new Review(GAME_ID, user, 5, "Late review"));
+		CursorPage<Review> second = reviewService.getReviewsAfter(GAME_ID, cursor, 3);
+		assertThat(second.content())
+				.extracting(Review::getId)
+				.doesNotContain(late.getId())
+				.doesNotContainAnyElementsOf(first.content().stream().map(Review::getId).toList());
+	}
+
+	@Test
+	public void testInvalidCount() {
+		assertThatIllegalArgumentException().isThrownBy(() -> reviewService.getReviewsAfter(GAME_ID, null, 0));
+		assertThatIllegalArgumentException().isThrownBy(() -> reviewService.getReviews(GAME_ID, 1, -1));
+		assertThatIllegalArgumentException().isThrownBy(() -> reviewService.getReviews(GAME_ID, 1, Integer.MAX_VALUE));
+		// The offset page also gives the cursor of the next one
+		CursorPage<Review> offsetPage = reviewService.getReviews(GAME_ID, 2, 2);
+		assertThat(reviewService.getReviewsAfter(GAME_ID, offsetPage.nextCursor(), 1).content())
+				.extracting(Review::getId)
+				.containsExactly(reviewService.getReviews(GAME_ID, 4, 1).content().get(0).getId());
+	}
+
+	@Test
+	public void testRatingAggregates() {
+		String gameId = "rated-game";
+		gameReviewRepository.deleteById(gameId);
+		List<User> users = userRepository.findAll();
+		reviewService.addReview(gameId, users.get(0), 5, "Great");
+		reviewService.addReview(gameId, users.get(1), 4, "Good");
+		reviewService.addReview(gameId, users.get(2), 1, "Bad");
+		assertThat(reviewService.editReview(gameId, users.get(1).getId(), 2, "Not so good")).isPresent();
+		assertThat(reviewService.removeReview(gameId, users.get(2).getId())).isPresent();
+		// Nothing to edit or remove
+		assertThat(reviewService.editReview(gameId, users.get(3).getId(), 2, "None")).isEmpty();
+		assertThat(reviewService.removeReview(gameId, users.get(3).getId())).isEmpty();
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> reviewService.addReview(gameId, users.get(3), 6, "Out of range"));
+
+		GameReview gameReview = gameReviewRepository.findById(gameId).orElseThrow();
+		assertThat(gameReview.getRatingCount()).isEqualTo(2);
+		assertThat(gameReview.getRating()).isEqualTo(3.5f);
+		assertThat(gameReview.getRatingCount(5)).isEqualTo(1);
+		assertThat(gameReview.getRatingCount(4)).isZero();
+		assertThat(gameReview.getRatingCount(2)).isEqualTo(1);
+		assertThat(gameReview.getRatingCount(1)).isZero();
+		// Same result as computing it from all reviews
+		reviewService.recomputeRating(gameId);
+		GameReview recomputed = gameReviewRepository.findById(gameId).orElseThrow();
+		assertThat(recomputed.getRatingCount()).isEqualTo(gameReview.getRatingCount());
+		assertThat(recomputed.getRatingSum()).isEqualTo(gameReview.getRatingSum());
+		for (int rating = GameReview.MIN_RATING; rating <= GameReview.MAX_RATING; rating++) {
+			assertThat(recomputed.getRatingCount(rating)).isEqualTo(gameReview.getRatingCount(rating));
+		}
+	}
+
+	@Test
+	public void testGetRatingDoesNotWrite() {
+		String gameId = "unrated-game";
+		gameReviewRepository.deleteById(gameId);
+		GameReview gameReview = reviewService.getRating(gameId);
+		assertThat(gameReview.getId()).isEqualTo(gameId);
+		assertThat(gameReview.getRatingCount()).isZero();
+		assertThat(gameReviewRepository.existsById(gameId)).isFalse();
+		// Created by the first review
+		reviewService.addReview(gameId, userRepository.findAll().get(0), 4, "Good");
+		assertThat(reviewService.getRating(gameId).getRatingCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testConcurrentEdit() {
+		String gameId = "edited-game";
+		User user = userRepository.findAll().get(0);
+		Review added = reviewService.addReview(gameId, user, 3, "Fine");
+		assertThat(added.getVersion()).isZero();
+		// Two edits made from the same version, the second one must not overwrite the first
+		reviewService.saveReview(gameId, user, 4, "Better", added.getVersion());
+		assertThatExceptionOfType(OptimisticLockingFailureException.class)
+				.isThrownBy(() -> reviewService.saveReview(gameId, user, 1, "Worse", added.getVersion()));
+		Review edited = reviewRepository.findByGameIdAndUserId(gameId, user.getId()).orElseThrow();
+		assertThat(edited.getRating()).isEqualTo(4);
+		assertThat(edited.getVersion()).isEqualTo(1L);
+		// Added to the reviews of the user only once
+		reviewService.saveReview(gameId, user, 5, "Best", null);
+		assertThat(userRepository.findById(user.getId()).orElseThrow().getReviews()).containsOnlyOnce(gameId);
+		reviewService.removeReview(gameId, user.getId());
+		assertThat(userRepository.findById(user.getId()).orElseThrow().getReviews()).doesNotContain(gameId);
+	}
+
+	@Test
+	public void testInvalidCursor() {
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> reviewService.getReviewsAfter(GAME_ID, "not a cursor", 3));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> reviewService.getReviewsAfter(GAME_ID, "MTIzNDU", 3));
+	}
+}
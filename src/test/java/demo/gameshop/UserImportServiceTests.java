@@ -0,0 +1,175 @@
+package demo.gameshop;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import demo.gameshop.documents.User;
+import demo.gameshop.repositories.UserRepository;
+import demo.gameshop.services.UserImportService;
+import demo.gameshop.services.UserImportService.Format;
+import demo.gameshop.services.UserImportService.ImportResult;
+import demo.gameshop.services.UserImportService.RowError;
+import jakarta.validation.Validation;
+
+@DataMongoTest
+@ActiveProfiles(profiles = {"test"})
+public class UserImportServiceTests {
+
+	private static final String HEADER = "username,email,firstName,lastName,dateOfBirth,roles\n";
+
+	@Autowired
+	private UserRepository userRepository;
+	@Autowired
+	private MongoOperations mongoOperations;
+	private UserImportService userImportService;
+
+	@BeforeEach
+	public void setUp() {
+		userRepository.deleteAll();
+		userRepository.save(new User("taken", "taken@testmail.com", "password"));
+		ObjectMapper objectMapper = new ObjectMapper()
+				.registerModule(new JavaTimeModule())
+				.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		// Batches of 2 rows, so the duplicates are found both within and across batches
+		userImportService = new UserImportService(userRepository, mongoOperations, new BCryptPasswordEncoder(4),
+				Validation.buildDefaultValidatorFactory().getValidator(), objectMapper, 2, 2);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		userImportService.shutdown();
+	}
+
+	@Test
+	public void testImportCsv() throws IOException {
+		String csv = HEADER
+				+ "john,john@testmail.com,John,Doe,1990-05-01,USER\n"
+				+ "\"jane\",jane@testmail.com,\"Jane, Mary\",Doe,,USER;ADMIN\r\n"
+				+ "taken,other@testmail.com,Taken,User,,USER\n"
+				+ "jane,jane2@testmail.com,Jane,Again,,USER\n"
+				+ "bob,not-an-email,Bob,Smith,,USER\n"
+				+ "alice,alice@testmail.com,Alice,Smith,01/01/1990,USER\n"
+				+ "eve,eve@testmail.com,Eve,Smith,,ROOT\n";
+		List<RowError> errors = new ArrayList<>();
+		ImportResult result = userImportService.importUsers(new StringReader(csv), Format.CSV, errors::add);
+
+		assertThat(result).isEqualTo(new ImportResult(7, 2, 5));
+		assertThat(errors).extracting(RowError::row).containsExactly(3L, 4L, 5L, 6L, 7L);
+		assertThat(errors.get(0).errors()).containsExactly("username: Username already exists");
+		assertThat(errors.get(1).errors()).containsExactly("username: Username already exists");
+		assertThat(errors.get(2).errors()).singleElement().asString().startsWith("email:");
+		assertThat(errors.get(3).errors()).singleElement().asString().startsWith("dateOfBirth:");
+		assertThat(errors.get(4).errors()).containsExactly("roles: Unknown role ROOT");
+
+		User jane = userRepository.findByUsername("jane").orElseThrow();
+		assertThat(jane.getFirstName()).isEqualTo("Jane, Mary");
+		assertThat(jane.getRoles()).isEqualTo(Set.of("USER", "ADMIN"));
+		assertThat(jane.getPassword()).startsWith("$2a$04$");
+		assertThat(userRepository.findByUsername("john").orElseThrow().getDateOfBirth()).hasYear(1990);
+	}
+
+	@Test
+	public void testImportNdjson() throws IOException {
+		String ndjson = """
+				{"username":"john","email":"john@testmail.com","firstName":"John","lastName":"Doe","roles":["USER"],"disabled":true}
+
+				{"username":"jane",
+				{"username":"jane","email":"jane@testmail.com","firstName":"Jane","lastName":"Doe","roles":[]}
+				""";
+		List<RowError> errors = new ArrayList<>();
+		ImportResult result = userImportService.importUsers(new StringReader(ndjson), Format.NDJSON, errors::add);
+
+		assertThat(result).isEqualTo(new ImportResult(3, 1, 2));
+		assertThat(errors.get(0).errors()).singleElement().asString().startsWith("Invalid JSON");
+		assertThat(errors.get(1).username()).isEqualTo("jane");
+		assertThat(errors.get(1).errors()).singleElement().asString().startsWith("roles:");
+		assertThat(userRepository.findByUsername("john").orElseThrow().isDisabled()).isTrue();
+	}
+
+	@Test
+	public void testNdjsonLinesMustBeObjects() throws IOException {
+		String ndjson = """
+				null
+				["jane"]
+				"jane"
+				""";
+		List<RowError> errors = new ArrayList<>();
+		ImportResult result = userImportService.importUsers(new StringReader(ndjson), Format.NDJSON, errors::add);
+
+		assertThat(result).isEqualTo(new ImportResult(3, 0, 3));
+		assertThat(errors).extracting(RowError::row).containsExactly(1L, 2L, 3L);
+		assertThat(errors).allSatisfy(error ->
+				assertThat(error.errors()).singleElement().asString().startsWith("Invalid JSON"));
+	}
+
+	@Test
+	public void testExportCanBeImported() throws IOException {
+		userImportService.importUsers(new StringReader(HEADER
+				+ "john,john@testmail.com,John,\"Doe, \"\"Jr\"\"\",1990-05-01,USER;ADMIN\n"), Format.CSV, error -> {});
+		for (Format format : Format.values()) {
+			StringWriter exported = new StringWriter();
+			userImportService.exportUsers(exported, format);
+			userRepository.deleteAll();
+
+			ImportResult result = userImportService.importUsers(new StringReader(exported.toString()), format, error -> {});
+			assertThat(result).isEqualTo(new ImportResult(2, 2, 0));
+			User john = userRepository.findByUsername("john").orElseThrow();
+			assertThat(john.getLastName()).isEqualTo("Doe, \"Jr\"");
+			assertThat(john.getRoles()).isEqualTo(Set.of("USER", "ADMIN"));
+		}
+	}
+
+	@Test
+	public void testFormulasAreEscaped() throws IOException {
+		userImportService.importUsers(new StringReader(HEADER.replace("roles", "phoneNumber,address,roles")
+				+ "john,john@testmail.com,=HYPERLINK(\"x\"),'-Doe,,+33123456789,'@home,USER\n"), Format.CSV, error -> {});
+		User john = userRepository.findByUsername("john").orElseThrow();
+		assertThat(john.getFirstName()).isEqualTo("=HYPERLINK(\"x\")");
+		// Prefixed values are read without their prefix
+		assertThat(john.getLastName()).isEqualTo("-Doe");
+		assertThat(john.getAddress()).isEqualTo("@home");
+
+		StringWriter exported = new StringWriter();
+		userImportService.exportUsers(exported, Format.CSV);
+		assertThat(exported.toString())
+				.contains(",\"'=HYPERLINK(\"\"x\"\")\",'-Doe,", ",'+33123456789,'@home,")
+				.doesNotContain(",=", ",+", ",-", ",@");
+		userRepository.deleteAll();
+		userImportService.importUsers(new StringReader(exported.toString()), Format.CSV, error -> {});
+		john = userRepository.findByUsername("john").orElseThrow();
+		assertThat(john.getFirstName()).isEqualTo("=HYPERLINK(\"x\")");
+		assertThat(john.getPhoneNumber()).isEqualTo("+33123456789");
+		assertThat(john.getAddress()).isEqualTo("@home");
+	}
+
+	@Test
+	public void testByteOrderMarkIsSkipped() throws IOException {
+		ImportResult result = userImportService.importUsers(
+				new StringReader("\uFEFF" + HEADER + "john,john@testmail.com,John,Doe,,USER\n"), Format.CSV, error -> {});
+		assertThat(result).isEqualTo(new ImportResult(1, 1, 0));
+		assertThat(userRepository.findByUsername("john")).isPresent();
+		result = userImportService.importUsers(new StringReader(
+				"\uFEFF{\"username\":\"jane\",\"email\":\"jane@testmail.com\",\"firstName\":\"Jane\",\"lastName\":\"Doe\",\"roles\":[\"USER\"]}\n"),
+				Format.NDJSON, error -> {});
+		assertThat(result).isEqualTo(new ImportResult(1, 1, 0));
+	}
+}